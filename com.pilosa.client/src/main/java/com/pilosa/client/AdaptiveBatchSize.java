@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+/**
+ * Adjusts the import batch size from the observed import latency.
+ * <p>
+ * The batch size grows additively while batches are imported within the target latency,
+ * and is halved when a batch takes longer. Only batches which started after the last decrease
+ * can decrease it again, so batches which were already in flight don't shrink it repeatedly.
+ */
+final class AdaptiveBatchSize {
+    AdaptiveBatchSize(ImportOptions options) {
+        this.targetLatencyMs = options.getTargetLatencyMs();
+        this.minBatchSize = Math.max(1, options.getMinBatchSize());
+        this.maxBatchSize = Math.max(this.minBatchSize, options.getMaxBatchSize());
+        this.batchSize = clamp(options.getBatchSize());
+        this.step = Math.max(1, this.batchSize / 10);
+    }
+
+    /**
+     * Returns the current batch size.
+     */
+    int get() {
+        return this.batchSize;
+    }
+
+    /**
+     * Updates the batch size using the latency of an imported batch.
+     *
+     * @param count     number of records in the batch
+     * @param startTime time the import of the batch started, in milliseconds
+     * @param latencyMs time it took to import the batch, in milliseconds
+     */
+    synchronized void observe(int count, long startTime, long latencyMs) {
+        int current = this.batchSize;
+        if (latencyMs > this.targetLatencyMs) {
+            if (startTime >= this.lastDecreaseTime) {
+                this.batchSize = clamp(current / 2);
+                this.lastDecreaseTime = startTime + latencyMs;
+            }
+        } else {
+            // grow by about one step after a full batch of records is acknowledged
+            long increase = Math.max(1, (long) this.step * count / current);
+            this.batchSize = clamp(current + increase);
+        }
+    }
+
+    private int clamp(long size) {
+        return (int) Math.max(this.minBatchSize, Math.min(this.maxBatchSize, size));
+    }
+
+    private final long targetLatencyMs;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final int step;
+    private volatile int batchSize;
+    private long lastDecreaseTime = 0;
+}
@@ -137,6 +137,53 @@ public final class ClientOptions {
             return this;
         }
 
+        /**
+         * Sets the maximum number of keys cached for each index (column keys) and field (row keys).
+         * <p>
+         *     Translated keys are cached by the client, so they are not sent to the server again.
+         *     The caches of an index or field are dropped when the client deletes it, or creates it in
+         *     {@link PilosaClient#syncSchema}; disable caching if other clients delete and recreate indexes
+         *     or fields with the same names. The caches of the 64 most recently used indexes and fields are kept.
+         *     A cache takes memory for the keys it holds only, so small indexes and fields have small caches.
+         *     Set to 0 to disable caching.
+         *
+         * @param size maximum number of keys per index or field
+         * @return ClientOptions builder object
+         */
+        public Builder setKeyCacheSize(int size) {
+            this.keyCacheSize = size;
+            return this;
+        }
+
+        /**
+         * Sets the codec to compress query and import requests with.
+         * <p>
+         *     Requests smaller than 1KB are not compressed.
+         *     The server must accept compressed requests; compression is disabled by default.
+         *
+         * @param codec codec, e.g., {@link GzipCodec}, or null to disable compression
+         * @return ClientOptions builder object
+         */
+        public Builder setRequestCodec(ContentCodec codec) {
+            this.requestCodec = codec;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of import threads of the client.
+         * <p>
+         *     The threads which encode the records of imports are shared by all imports of the client.
+         *     An import uses up to {@link ImportOptions#getThreadCount()} of them, fewer if the other imports
+         *     use them, and at least one. The default is twice the number of available processors.
+         *
+         * @param count maximum number of import threads
+         * @return ClientOptions builder object
+         */
+        public Builder setImportThreadCount(int count) {
+            this.importThreadCount = count;
+            return this;
+        }
+
         /**
          * Creates the ClientOptions object.
          * @return ClientOptions object
@@ -144,7 +191,8 @@ public final class ClientOptions {
         public ClientOptions build() {
             return new ClientOptions(this.socketTimeout, this.connectTimeout,
                     this.retryCount, this.connectionPoolSizePerRoute, this.connectionPoolTotalSize,
-                    this.sslContext, this.shardWidth, this.manualServerAddress, this.tracer);
+                    this.sslContext, this.shardWidth, this.manualServerAddress, this.tracer,
+                    this.keyCacheSize, this.requestCodec, this.importThreadCount);
         }
 
         private int socketTimeout = 300000;
@@ -156,6 +204,9 @@ public final class ClientOptions {
         private long shardWidth = DEFAULT_SHARD_WIDTH;
         private boolean manualServerAddress = false;
         private Tracer tracer = null;
+        private int keyCacheSize = 100000;
+        private ContentCodec requestCodec = null;
+        private int importThreadCount = 2 * Runtime.getRuntime().availableProcessors();
     }
 
     public static final long DEFAULT_SHARD_WIDTH = 1048576L;
@@ -204,10 +255,24 @@ public final class ClientOptions {
         return this.tracer;
     }
 
+    public int getKeyCacheSize() {
+        return this.keyCacheSize;
+    }
+
+    public ContentCodec getRequestCodec() {
+        return this.requestCodec;
+    }
+
+    public int getImportThreadCount() {
+        return this.importThreadCount;
+    }
+
     private ClientOptions(final int socketTimeout, final int connectTimeout, final int retryCount,
                           final int connectionPoolSizePerRoute, final int connectionPoolTotalSize,
                           final SSLContext sslContext, final long shardWidth,
-                          final boolean manualServerAddress, final Tracer tracer) {
+                          final boolean manualServerAddress, final Tracer tracer,
+                          final int keyCacheSize,
+                          final ContentCodec requestCodec, final int importThreadCount) {
         this.socketTimeout = socketTimeout;
         this.connectTimeout = connectTimeout;
         this.retryCount = retryCount;
@@ -217,6 +282,9 @@ public final class ClientOptions {
         this.shardWidth = shardWidth;
         this.manualServerAddress = manualServerAddress;
         this.tracer = tracer;
+        this.keyCacheSize = keyCacheSize;
+        this.requestCodec = requestCodec;
+        this.importThreadCount = importThreadCount;
     }
 
     private final int socketTimeout; // milliseconds
@@ -228,4 +296,7 @@ public final class ClientOptions {
     private final long shardWidth;
     private final boolean manualServerAddress;
     private final Tracer tracer;
+    private final int keyCacheSize;
+    private final ContentCodec requestCodec;
+    private final int importThreadCount;
 }
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Compresses request payloads.
+ * <p>
+ * Implementations should be thread safe, since a codec is shared by all requests of a client or an import.
+ * The server, or a proxy in front of it, must support the content encoding of the codec.
+ *
+ * @see GzipCodec
+ */
+public interface ContentCodec {
+    /**
+     * Returns the content encoding of the compressed payload, which is sent in the Content-Encoding header.
+     *
+     * @return content encoding, e.g., gzip
+     */
+    String getContentEncoding();
+
+    /**
+     * Returns a stream which compresses the data written to it and writes the result to the given stream.
+     * Closing the returned stream finishes the compressed data and closes the given stream.
+     *
+     * @param out the stream for the compressed data
+     * @return the compressing stream
+     * @throws IOException if the stream cannot be created
+     */
+    OutputStream encode(OutputStream out) throws IOException;
+}
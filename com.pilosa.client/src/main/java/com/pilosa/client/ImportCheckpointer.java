@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Saves the checkpoints of an import read by a single producer.
+ * <p>
+ * Every checkpoint interval, the producer passes a flush request to every worker. The workers import the records
+ * they hold and count down the latch of the request once the records are acknowledged; the last one saves
+ * the position of the request. Since the workers handle flush requests in order, the checkpoints complete in order.
+ * The producer doesn't wait for the flushes.
+ */
+final class ImportCheckpointer {
+    ImportCheckpointer(ImportCheckpointStore store, long interval, boolean resume) {
+        this.store = store;
+        this.interval = Math.max(1, interval);
+        if (resume) {
+            this.position = store.load();
+        } else {
+            // a checkpoint of an earlier import doesn't apply to this one
+            store.save(0);
+            this.position = 0;
+        }
+        this.saved = this.position;
+        this.nextCheckpoint = this.position + this.interval;
+    }
+
+    /**
+     * Returns the number of records to skip when the import starts.
+     */
+    long getResumePosition() {
+        return this.saved;
+    }
+
+    /**
+     * Counts a record read by the producer, and requests a checkpoint if the interval passed.
+     *
+     * @return false if a worker has stopped
+     */
+    boolean recordRead(List<RecordChunkQueue.Writer> writers) throws InterruptedException {
+        this.position++;
+        if (this.position < this.nextCheckpoint) {
+            return true;
+        }
+        this.nextCheckpoint = this.position + this.interval;
+        CountDownLatch latch = new Checkpoint(this.position, writers.size());
+        boolean running = true;
+        for (RecordChunkQueue.Writer w : writers) {
+            running &= w.passFlush(latch);
+        }
+        return running;
+    }
+
+    /**
+     * Saves the position of the last record, once all records are imported.
+     */
+    void completed() {
+        save(this.position);
+    }
+
+    private synchronized void save(long position) {
+        if (position > this.saved) {
+            this.store.save(position);
+            this.saved = position;
+        }
+    }
+
+    private final class Checkpoint extends CountDownLatch {
+        Checkpoint(long position, int count) {
+            super(count);
+            this.position = position;
+        }
+
+        @Override
+        public void countDown() {
+            super.countDown();
+            if (getCount() == 0) {
+                save(this.position);
+            }
+        }
+
+        private final long position;
+    }
+
+    private final ImportCheckpointStore store;
+    private final long interval;
+    // number of records read, including the skipped ones
+    private long position;
+    private long saved;
+    private long nextCheckpoint;
+}
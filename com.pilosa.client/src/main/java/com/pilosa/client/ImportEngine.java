@@ -0,0 +1,216 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs the imports of a client.
+ * <p>
+ * All imports of a client share a pool of threads, which are reused across imports, and a budget of
+ * import requests in flight, which defaults to the total size of the connection pool of the client.
+ * Each running import gets an equal share of the budget; an import may use more than its share only
+ * while no other import is running, so concurrent imports don't starve each other or exhaust the connection pool.
+ * <p>
+ * The import threads, which encode the records, are limited by {@link ClientOptions#getImportThreadCount()}
+ * over all imports: an import gets the import threads it asks for if they are free, fewer if the other imports
+ * use them, and waits if none is free. The threads which send the requests, read several iterators of an import
+ * or run background imports are not counted; the requests in flight limit the sending threads.
+ * <p>
+ * The metrics of all imports are reported by a single thread, which is started by the first import with a listener.
+ */
+final class ImportEngine {
+    ImportEngine(int maxInFlight, int maxWorkers) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.maxWorkers = Math.max(1, maxWorkers);
+        this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "pilosa-import");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Runs the given task on a thread of the engine.
+     */
+    void execute(Runnable task) {
+        this.executor.execute(task);
+    }
+
+    /**
+     * Returns a new group of tasks which run on the threads of the engine.
+     */
+    ImportTasks tasks() {
+        return new ImportTasks(this.executor);
+    }
+
+    /**
+     * Returns the executor which reports the metrics of the imports. Tasks run one at a time, in the order
+     * they are submitted.
+     */
+    synchronized ScheduledExecutorService reporter() {
+        if (this.reporter == null) {
+            this.reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "pilosa-import-metrics");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return this.reporter;
+    }
+
+    /**
+     * Reserves import threads for an import, which must release them once its threads stop.
+     *
+     * @param count number of threads the import asks for
+     * @return number of threads reserved, between 1 and count
+     * @throws InterruptedException if the thread is interrupted while waiting for a free import thread
+     */
+    synchronized int acquireWorkers(int count) throws InterruptedException {
+        while (this.workers >= this.maxWorkers) {
+            wait();
+        }
+        int reserved = Math.min(Math.max(1, count), this.maxWorkers - this.workers);
+        this.workers += reserved;
+        return reserved;
+    }
+
+    synchronized void releaseWorkers(int count) {
+        this.workers -= count;
+        notifyAll();
+    }
+
+    /**
+     * Registers an import, which must close the returned share once it completes.
+     */
+    synchronized Share share() {
+        this.shareCount++;
+        notifyAll();
+        return new Share();
+    }
+
+    /**
+     * Stops accepting new tasks; tasks already started run to completion.
+     */
+    synchronized void shutdown() {
+        this.executor.shutdown();
+        if (this.reporter != null) {
+            this.reporter.shutdown();
+        }
+    }
+
+    int getMaxInFlight() {
+        return this.maxInFlight;
+    }
+
+    int getMaxWorkers() {
+        return this.maxWorkers;
+    }
+
+    /**
+     * The share of an import of the requests in flight.
+     */
+    final class Share {
+        private Share() {
+        }
+
+        /**
+         * Waits until the import can send a request.
+         */
+        void acquire() throws InterruptedException {
+            synchronized (ImportEngine.this) {
+                while (inFlight >= maxInFlight || this.held >= fairShare()) {
+                    ImportEngine.this.wait();
+                }
+                inFlight++;
+                this.held++;
+            }
+        }
+
+        /**
+         * Signals that a request of the import completed.
+         */
+        void release() {
+            synchronized (ImportEngine.this) {
+                inFlight--;
+                this.held--;
+                ImportEngine.this.notifyAll();
+            }
+        }
+
+        /**
+         * Unregisters the import, so the other imports get its share.
+         */
+        void close() {
+            synchronized (ImportEngine.this) {
+                if (this.closed) {
+                    return;
+                }
+                this.closed = true;
+                shareCount--;
+                ImportEngine.this.notifyAll();
+            }
+        }
+
+        // requests in flight of the import, guarded by the engine
+        private int held = 0;
+        private boolean closed = false;
+    }
+
+    // requires the lock of the engine
+    private int fairShare() {
+        int count = Math.max(1, this.shareCount);
+        return Math.max(1, (this.maxInFlight + count - 1) / count);
+    }
+
+    private final int maxInFlight;
+    private final int maxWorkers;
+    private final ExecutorService executor;
+    // guarded by this
+    private ScheduledExecutorService reporter = null;
+    // guarded by this
+    private int inFlight = 0;
+    private int workers = 0;
+    private int shareCount = 0;
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import com.pilosa.client.exceptions.PilosaException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+
+/**
+ * Tracks an import running in the background.
+ * <p>
+ * The result of the handle is the final metrics of the import. {@link #get()} waits until the import
+ * completes, and throws an {@link ExecutionException} if the import failed. Use
+ * {@link #addListener(Runnable, Executor)} to be notified when the import completes instead of waiting for it.
+ *
+ * @see PilosaClient#importFieldAsync(com.pilosa.client.orm.Field, RecordIterator, ImportOptions)
+ */
+public final class ImportHandle implements Future<ImportMetrics> {
+    /**
+     * Stops reading records from the iterator.
+     * <p>
+     * The records already read are imported and the requests in flight are completed, unless
+     * <code>mayInterruptIfRunning</code> is true, in which case the import threads are interrupted and
+     * requests in flight are abandoned. Use {@link #awaitFlush()} to wait until the import has stopped.
+     *
+     * @param mayInterruptIfRunning true to interrupt the import instead of completing the requests in flight
+     * @return false if the import has already completed
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        synchronized (this) {
+            if (this.done.getCount() == 0) {
+                return false;
+            }
+            this.cancelled = true;
+            if (mayInterruptIfRunning && this.thread != null) {
+                this.thread.interrupt();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops reading records from the iterator, and imports the records already read.
+     *
+     * @return false if the import has already completed
+     */
+    public boolean cancel() {
+        return cancel(false);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * Returns whether the import has stopped. After it is cancelled, the import is done once the records
+     * already read are imported, or it is interrupted.
+     *
+     * @return true if the import has stopped
+     */
+    @Override
+    public boolean isDone() {
+        return this.done.getCount() == 0;
+    }
+
+    /**
+     * Runs the given listener on the given executor once the import has stopped, whether it completed,
+     * failed or was cancelled. If the import has already stopped, the listener is run right away.
+     * <p>
+     * The listener may call {@link #get()} to find out the result without blocking.
+     *
+     * @param listener listener to run
+     * @param executor executor to run the listener on, e.g., a pool of the application
+     */
+    public void addListener(Runnable listener, Executor executor) {
+        if (listener == null || executor == null) {
+            throw new NullPointerException("listener and executor are required");
+        }
+        synchronized (this.listeners) {
+            if (this.done.getCount() > 0) {
+                this.listeners.add(new Listener(listener, executor));
+                return;
+            }
+        }
+        new Listener(listener, executor).run();
+    }
+
+    /**
+     * Waits until the import completes and returns its final metrics.
+     *
+     * @return final metrics of the import
+     * @throws CancellationException if the import was cancelled
+     * @throws ExecutionException    if the import failed
+     * @throws InterruptedException  if the current thread is interrupted while waiting
+     */
+    @Override
+    public ImportMetrics get() throws InterruptedException, ExecutionException {
+        this.done.await();
+        return result();
+    }
+
+    @Override
+    public ImportMetrics get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        if (!this.done.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return result();
+    }
+
+    /**
+     * Returns the metrics of the import so far.
+     *
+     * @return import metrics
+     */
+    public ImportMetrics getMetrics() {
+        ImportMetrics result = this.result;
+        return (result != null) ? result : this.metrics.snapshot();
+    }
+
+    /**
+     * Waits until the records read from the iterator so far are imported.
+     * <p>
+     * The import threads import the records they hold without waiting for a full batch, and wait for
+     * their requests in flight. The flush starts before the next record is read, so if the iterator
+     * is waiting for a record, the flush waits for it too. Spilling imports are flushed when they complete.
+     * If the import has stopped, returns once the remaining records are imported.
+     *
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     * @throws PilosaException      if the import failed
+     */
+    public void awaitFlush() throws InterruptedException {
+        if (this.done.getCount() > 0) {
+            CountDownLatch flushed = new CountDownLatch(this.threadCount);
+            this.flushRequests.add(flushed);
+            while (!flushed.await(FLUSH_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                if (this.done.getCount() == 0) {
+                    break;
+                }
+            }
+        }
+        Throwable error = this.error;
+        if (error != null) {
+            throw new PilosaException("Error while importing", error);
+        }
+    }
+
+    ImportHandle(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    ImportMetricsCollector getCollector() {
+        return this.metrics;
+    }
+
+    boolean isCancelRequested() {
+        return this.cancelled;
+    }
+
+    /**
+     * Returns the next flush request, or null. Each import thread counts down the returned latch once flushed.
+     */
+    CountDownLatch pollFlushRequest() {
+        return this.flushRequests.poll();
+    }
+
+    /**
+     * Sets the thread which runs the import.
+     *
+     * @return false if the import was cancelled before it started
+     */
+    synchronized boolean start(Thread thread) {
+        if (this.cancelled) {
+            finish();
+            return false;
+        }
+        this.thread = thread;
+        return true;
+    }
+
+    void complete(Throwable error) {
+        synchronized (this) {
+            this.thread = null;
+            // clear an interrupt sent by cancel, the thread may be reused
+            Thread.interrupted();
+        }
+        this.error = error;
+        this.result = this.metrics.snapshot();
+        finish();
+    }
+
+    private void finish() {
+        List<Listener> listeners;
+        synchronized (this.listeners) {
+            this.done.countDown();
+            listeners = new ArrayList<>(this.listeners);
+            this.listeners.clear();
+        }
+        for (Listener listener : listeners) {
+            listener.run();
+        }
+    }
+
+    private ImportMetrics result() throws ExecutionException {
+        if (this.cancelled) {
+            throw new CancellationException();
+        }
+        if (this.error != null) {
+            throw new ExecutionException(this.error);
+        }
+        return this.result;
+    }
+
+    private static final class Listener {
+        Listener(Runnable runnable, Executor executor) {
+            this.runnable = runnable;
+            this.executor = executor;
+        }
+
+        void run() {
+            try {
+                this.executor.execute(this.runnable);
+            } catch (RuntimeException e) {
+                // a failing listener or executor shouldn't prevent the others from running
+                logger.warn("Error while running an import listener", e);
+            }
+        }
+
+        private final Runnable runnable;
+        private final Executor executor;
+    }
+
+    private static final long FLUSH_CHECK_INTERVAL_MS = 100;
+    private static final Logger logger = LoggerFactory.getLogger("pilosa");
+
+    private final int threadCount;
+    private final ImportMetricsCollector metrics = new ImportMetricsCollector();
+    private final Queue<CountDownLatch> flushRequests = new ConcurrentLinkedQueue<>();
+    private final CountDownLatch done = new CountDownLatch(1);
+    // guarded by itself
+    private final List<Listener> listeners = new ArrayList<>();
+    private volatile boolean cancelled = false;
+    private volatile Throwable error = null;
+    private volatile ImportMetrics result = null;
+    private Thread thread = null;
+}
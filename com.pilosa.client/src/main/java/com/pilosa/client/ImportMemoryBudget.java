@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the memory held by the records buffered by the import workers.
+ * <p>
+ * Workers account for the memory of their shard buffers, and flush their largest buffers
+ * while the budget is exceeded. The import producer waits until there is room in the budget.
+ */
+final class ImportMemoryBudget {
+    ImportMemoryBudget(long limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Adds to the memory in use. A negative amount releases memory.
+     *
+     * @param bytes amount of memory in bytes
+     */
+    void add(long bytes) {
+        long used = this.used.addAndGet(bytes);
+        if (bytes < 0 && used < this.limit) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    boolean isExceeded() {
+        return this.used.get() >= this.limit;
+    }
+
+    long getUsed() {
+        return this.used.get();
+    }
+
+    /**
+     * Waits until the memory in use is below the limit.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    void await() throws InterruptedException {
+        synchronized (this) {
+            while (isExceeded()) {
+                // a timed wait, since memory is released without holding the lock
+                wait(CHECK_INTERVAL_MS);
+            }
+        }
+    }
+
+    static final long CHECK_INTERVAL_MS = 100;
+
+    private final long limit;
+    private final AtomicLong used = new AtomicLong();
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A snapshot of the metrics of an import.
+ * <p>
+ * Comparing the encode time with the send time, the queue depths and the request latencies
+ * shows whether an import is limited by the client, the network or the server.
+ */
+public final class ImportMetrics {
+    public long getElapsedMs() {
+        return this.elapsedMs;
+    }
+
+    /**
+     * Returns the number of records read from the iterator and passed to the import threads.
+     *
+     * @return number of records
+     */
+    public long getReadCount() {
+        return this.readCount;
+    }
+
+    /**
+     * Returns the number of records accepted by the nodes.
+     *
+     * @return number of records
+     */
+    public long getImportedCount() {
+        return this.importedCount;
+    }
+
+    public double getRecordsPerSecond() {
+        return perSecond(this.importedCount, this.elapsedMs);
+    }
+
+    /**
+     * Returns the number of request bytes accepted by the nodes, after compression.
+     *
+     * @return number of bytes
+     */
+    public long getByteCount() {
+        return this.byteCount;
+    }
+
+    public double getBytesPerSecond() {
+        return perSecond(this.byteCount, this.elapsedMs);
+    }
+
+    /**
+     * Returns the total time the import threads spent encoding requests.
+     *
+     * @return time in milliseconds
+     */
+    public long getEncodeTimeMs() {
+        return this.encodeTimeMs;
+    }
+
+    /**
+     * Returns the total time spent sending requests, including failed requests.
+     * <p>
+     * Requests are sent concurrently, so the send time may be longer than the elapsed time.
+     *
+     * @return time in milliseconds
+     */
+    public long getSendTimeMs() {
+        return this.sendTimeMs;
+    }
+
+    public long getRetryCount() {
+        return this.retryCount;
+    }
+
+    public long getFailoverCount() {
+        return this.failoverCount;
+    }
+
+    /**
+     * Returns the number of batches a replica failed to import, while the replica quorum accepted them.
+     * <p>
+     * Those replicas lack the records of the batches, the import doesn't fail because of them.
+     *
+     * @return number of batches missing on a replica
+     */
+    public long getReplicaFailureCount() {
+        return this.replicaFailureCount;
+    }
+
+    /**
+     * Returns the number of records waiting to be processed by each import thread.
+     *
+     * @return number of records per import thread
+     */
+    public int[] getQueueDepths() {
+        return Arrays.copyOf(this.queueDepths, this.queueDepths.length);
+    }
+
+    /**
+     * Returns the number of shards imported so far.
+     *
+     * @return number of shards
+     */
+    public int getShardCount() {
+        return this.shardCount;
+    }
+
+    /**
+     * Returns the ratio of the records of the largest shard to the mean records per shard.
+     * <p>
+     * A skew of 1 means records are spread evenly to shards.
+     *
+     * @return shard skew, or 0 if no shards were imported
+     */
+    public double getShardSkew() {
+        return this.shardSkew;
+    }
+
+    /**
+     * Returns the latencies of all requests.
+     *
+     * @return latency histogram
+     */
+    public LatencyHistogram getLatency() {
+        return this.latency;
+    }
+
+    /**
+     * Returns the metrics of each node by its address.
+     *
+     * @return node metrics
+     */
+    public Map<String, NodeImportMetrics> getNodes() {
+        return this.nodes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("elapsed:%d ms read:%d imported:%d (%.0f/s) bytes:%d (%.0f/s) encode:%d ms send:%d ms " +
+                        "retries:%d failovers:%d replica failures:%d queues:%s shards:%d skew:%.2f latency:[%s]",
+                this.elapsedMs, this.readCount, this.importedCount, getRecordsPerSecond(),
+                this.byteCount, getBytesPerSecond(), this.encodeTimeMs, this.sendTimeMs,
+                this.retryCount, this.failoverCount, this.replicaFailureCount, Arrays.toString(this.queueDepths),
+                this.shardCount, this.shardSkew, this.latency);
+    }
+
+    static double perSecond(long count, long elapsedMs) {
+        return (elapsedMs <= 0) ? 0 : count * 1000.0 / elapsedMs;
+    }
+
+    ImportMetrics(long elapsedMs, long readCount, long importedCount, long byteCount,
+                  long encodeTimeMs, long sendTimeMs, long retryCount, long failoverCount,
+                  long replicaFailureCount, int[] queueDepths, int shardCount, double shardSkew,
+                  LatencyHistogram latency, Map<String, NodeImportMetrics> nodes) {
+        this.elapsedMs = elapsedMs;
+        this.readCount = readCount;
+        this.importedCount = importedCount;
+        this.byteCount = byteCount;
+        this.encodeTimeMs = encodeTimeMs;
+        this.sendTimeMs = sendTimeMs;
+        this.retryCount = retryCount;
+        this.failoverCount = failoverCount;
+        this.replicaFailureCount = replicaFailureCount;
+        this.queueDepths = queueDepths;
+        this.shardCount = shardCount;
+        this.shardSkew = shardSkew;
+        this.latency = latency;
+        this.nodes = Collections.unmodifiableMap(nodes);
+    }
+
+    private final long elapsedMs;
+    private final long readCount;
+    private final long importedCount;
+    private final long byteCount;
+    private final long encodeTimeMs;
+    private final long sendTimeMs;
+    private final long retryCount;
+    private final long failoverCount;
+    private final long replicaFailureCount;
+    private final int[] queueDepths;
+    private final int shardCount;
+    private final double shardSkew;
+    private final LatencyHistogram latency;
+    private final Map<String, NodeImportMetrics> nodes;
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects the metrics of an import.
+ * <p>
+ * Counters are updated without locks by the import threads and the sender, once per chunk or request.
+ * A listener is called with snapshots on the reporting thread of the client, so a slow listener doesn't slow down
+ * the import.
+ */
+final class ImportMetricsCollector {
+    ImportMetricsCollector() {
+        this.startTime = System.currentTimeMillis();
+    }
+
+    void setQueues(List<RecordChunkQueue> queues) {
+        this.queues = queues;
+    }
+
+    void addRead(int count) {
+        this.readCount.addAndGet(count);
+    }
+
+    void addEncodeTime(long nanos) {
+        this.encodeNanos.addAndGet(nanos);
+    }
+
+    void addShardRecords(long shard, int count) {
+        AtomicLong shardCount = this.shardCounts.get(shard);
+        if (shardCount == null) {
+            AtomicLong newCount = new AtomicLong();
+            shardCount = this.shardCounts.putIfAbsent(shard, newCount);
+            if (shardCount == null) {
+                shardCount = newCount;
+            }
+        }
+        shardCount.addAndGet(count);
+    }
+
+    /**
+     * Records a batch accepted by the required number of replicas.
+     */
+    void addImported(int count) {
+        this.importedCount.addAndGet(count);
+    }
+
+    void addRetry() {
+        this.retryCount.incrementAndGet();
+    }
+
+    void addFailover() {
+        this.failoverCount.incrementAndGet();
+    }
+
+    /**
+     * Records a batch which the given node failed to import, while the replica quorum accepted it.
+     */
+    void addReplicaFailure(String host) {
+        this.replicaFailureCount.incrementAndGet();
+        node(host).replicaFailureCount.incrementAndGet();
+    }
+
+    /**
+     * Records a request sent to a node.
+     *
+     * @param host        address of the node
+     * @param recordCount number of records in the request
+     * @param byteCount   size of the request
+     * @param nanos       time it took to send the request
+     * @param success     whether the node accepted the request
+     */
+    void addRequest(String host, int recordCount, long byteCount, long nanos, boolean success) {
+        Node node = node(host);
+        long ms = TimeUnit.NANOSECONDS.toMillis(nanos);
+        this.sendNanos.addAndGet(nanos);
+        this.latency.add(ms);
+        node.latency.add(ms);
+        node.requestCount.incrementAndGet();
+        if (success) {
+            node.recordCount.addAndGet(recordCount);
+            node.byteCount.addAndGet(byteCount);
+            this.byteCount.addAndGet(byteCount);
+        } else {
+            node.errorCount.incrementAndGet();
+        }
+    }
+
+    ImportMetrics snapshot() {
+        long elapsedMs = System.currentTimeMillis() - this.startTime;
+        List<RecordChunkQueue> queues = this.queues;
+        int[] queueDepths = new int[queues.size()];
+        for (int i = 0; i < queueDepths.length; i++) {
+            queueDepths[i] = queues.get(i).size();
+        }
+        long maxShardCount = 0;
+        long totalShardCount = 0;
+        for (AtomicLong count : this.shardCounts.values()) {
+            long c = count.get();
+            maxShardCount = Math.max(maxShardCount, c);
+            totalShardCount += c;
+        }
+        int shardCount = this.shardCounts.size();
+        double shardSkew = (totalShardCount == 0) ? 0 : (double) maxShardCount * shardCount / totalShardCount;
+        Map<String, NodeImportMetrics> nodes = new TreeMap<>();
+        for (Map.Entry<String, Node> entry : this.nodes.entrySet()) {
+            Node node = entry.getValue();
+            nodes.put(entry.getKey(), new NodeImportMetrics(entry.getKey(), elapsedMs,
+                    node.recordCount.get(), node.byteCount.get(), node.requestCount.get(), node.errorCount.get(),
+                    node.replicaFailureCount.get(), node.latency.snapshot()));
+        }
+        return new ImportMetrics(elapsedMs, this.readCount.get(), this.importedCount.get(), this.byteCount.get(),
+                TimeUnit.NANOSECONDS.toMillis(this.encodeNanos.get()),
+                TimeUnit.NANOSECONDS.toMillis(this.sendNanos.get()),
+                this.retryCount.get(), this.failoverCount.get(), this.replicaFailureCount.get(), queueDepths, shardCount, shardSkew,
+                this.latency.snapshot(), nodes);
+    }
+
+    /**
+     * Calls the listener with a snapshot of the metrics periodically.
+     *
+     * @param reporter executor shared by the imports of the client, see {@link ImportEngine#reporter()}
+     */
+    void startReporting(ScheduledExecutorService reporter, ImportMetricsListener listener, long intervalMs) {
+        this.listener = listener;
+        this.reporter = reporter;
+        long interval = Math.max(1, intervalMs);
+        this.reports = reporter.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                report(snapshot());
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic reports and calls the listener with the final metrics.
+     * <p>
+     * The listener is called after the report in progress, if any, without waiting for it.
+     */
+    void stopReporting() {
+        if (this.reports == null) {
+            return;
+        }
+        this.reports.cancel(false);
+        final ImportMetrics metrics = snapshot();
+        try {
+            this.reporter.execute(new Runnable() {
+                @Override
+                public void run() {
+                    report(metrics);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the client is closed
+            report(metrics);
+        }
+    }
+
+    private void report(ImportMetrics metrics) {
+        try {
+            this.listener.metricsUpdated(metrics);
+        } catch (RuntimeException e) {
+            logger.warn("Import metrics listener failed", e);
+        }
+    }
+
+    private Node node(String host) {
+        Node node = this.nodes.get(host);
+        if (node == null) {
+            Node newNode = new Node();
+            node = this.nodes.putIfAbsent(host, newNode);
+            if (node == null) {
+                node = newNode;
+            }
+        }
+        return node;
+    }
+
+    private static final class Node {
+        private final AtomicLong recordCount = new AtomicLong();
+        private final AtomicLong byteCount = new AtomicLong();
+        private final AtomicLong requestCount = new AtomicLong();
+        private final AtomicLong errorCount = new AtomicLong();
+        private final AtomicLong replicaFailureCount = new AtomicLong();
+        private final Latencies latency = new Latencies();
+    }
+
+    private static final class Latencies {
+        void add(long ms) {
+            this.counts.incrementAndGet(LatencyHistogram.bucket(ms));
+            this.totalMs.addAndGet(ms);
+            long max = this.maxMs.get();
+            while (ms > max && !this.maxMs.compareAndSet(max, ms)) {
+                max = this.maxMs.get();
+            }
+        }
+
+        LatencyHistogram snapshot() {
+            long[] counts = new long[this.counts.length()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = this.counts.get(i);
+            }
+            return new LatencyHistogram(counts, this.totalMs.get(), this.maxMs.get());
+        }
+
+        private final AtomicLongArray counts = new AtomicLongArray(LatencyHistogram.BUCKET_COUNT);
+        private final AtomicLong totalMs = new AtomicLong();
+        private final AtomicLong maxMs = new AtomicLong();
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger("pilosa");
+
+    private final long startTime;
+    private final AtomicLong readCount = new AtomicLong();
+    private final AtomicLong importedCount = new AtomicLong();
+    private final AtomicLong byteCount = new AtomicLong();
+    private final AtomicLong encodeNanos = new AtomicLong();
+    private final AtomicLong sendNanos = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong failoverCount = new AtomicLong();
+    private final AtomicLong replicaFailureCount = new AtomicLong();
+    private final ConcurrentMap<Long, AtomicLong> shardCounts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Node> nodes = new ConcurrentHashMap<>();
+    private final Latencies latency = new Latencies();
+    private volatile List<RecordChunkQueue> queues = Collections.emptyList();
+    private ImportMetricsListener listener = null;
+    private ScheduledExecutorService reporter = null;
+    private ScheduledFuture<?> reports = null;
+}
@@ -49,7 +49,11 @@ public class ImportOptions {
         public ImportOptions build() {
             return new ImportOptions(this.threadCount,
                     this.timeoutMs, this.batchSize, this.strategy,
-                    this.roaring, this.clear);
+                    this.roaring, this.clear, this.maxInFlightPerNode, this.replicaQuorum,
+                    this.retryBackoffMs, this.targetLatencyMs, this.minBatchSize, this.maxBatchSize,
+                    this.requestCodec, this.sorted, this.memoryBudget, this.spillDirectory,
+                    this.metricsListener, this.metricsIntervalMs, this.checkpointStore, this.checkpointInterval,
+                    this.resume, this.adaptiveThrottling, this.nodeTargetLatencyMs, this.nodeScheduling);
         }
 
         public Builder setThreadCount(int threadCount) {
@@ -82,12 +86,284 @@ public class ImportOptions {
             return this;
         }
 
+        /**
+         * Sets the maximum number of import requests in flight to a single node.
+         * <p>
+         * Import threads encode the next batch while earlier batches are being sent.
+         * Increasing this value keeps the network busy when the round trip to the nodes is long.
+         *
+         * @param maxInFlightPerNode maximum number of requests in flight
+         * @return ImportOptions builder
+         */
+        public Builder setMaxInFlightPerNode(int maxInFlightPerNode) {
+            this.maxInFlightPerNode = maxInFlightPerNode;
+            return this;
+        }
+
+        /**
+         * Sets the number of replicas which must accept a batch before the batch is considered imported.
+         * <p>
+         * The replicas of a batch are always sent concurrently. By default all replicas must accept the batch.
+         * With a smaller quorum, failures of the remaining replicas are logged instead of failing the import,
+         * so the import may succeed while some replicas lack records. Those failures are counted by
+         * {@link ImportMetrics#getReplicaFailureCount()}.
+         *
+         * @param replicaQuorum number of replicas, or 0 for all replicas
+         * @return ImportOptions builder
+         */
+        public Builder setReplicaQuorum(int replicaQuorum) {
+            this.replicaQuorum = replicaQuorum;
+            return this;
+        }
+
+        /**
+         * Sets the initial time to wait before a failed import request is retried.
+         * <p>
+         * The wait time doubles with each retry, and a random jitter is applied.
+         * The number of retries is set by {@link ClientOptions.Builder#setRetryCount(int)}.
+         *
+         * @param retryBackoffMs initial wait time in milliseconds
+         * @return ImportOptions builder
+         */
+        public Builder setRetryBackoffMs(long retryBackoffMs) {
+            this.retryBackoffMs = retryBackoffMs;
+            return this;
+        }
+
+        /**
+         * Enables adaptive batch sizes.
+         * <p>
+         * The batch size starts at the value set with {@link #setBatchSize(int)}. It grows while batches
+         * are imported within the target latency and is halved when a batch takes longer.
+         *
+         * @param targetLatencyMs target time to import a batch in milliseconds, or 0 to use a fixed batch size
+         * @return ImportOptions builder
+         */
+        public Builder setTargetLatencyMs(long targetLatencyMs) {
+            this.targetLatencyMs = targetLatencyMs;
+            return this;
+        }
+
+        /**
+         * Sets the smallest batch size used with adaptive batch sizes.
+         *
+         * @param minBatchSize minimum batch size
+         * @return ImportOptions builder
+         */
+        public Builder setMinBatchSize(int minBatchSize) {
+            this.minBatchSize = minBatchSize;
+            return this;
+        }
+
+        /**
+         * Sets the largest batch size used with adaptive batch sizes.
+         *
+         * @param maxBatchSize maximum batch size
+         * @return ImportOptions builder
+         */
+        public Builder setMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * Sets the codec to compress import requests with.
+         * <p>
+         * Overrides the request codec of the client for this import.
+         * Import requests are compressed by the import threads before they are sent.
+         *
+         * @param codec codec, e.g., {@link GzipCodec}, or null to use the request codec of the client
+         * @return ImportOptions builder
+         */
+        public Builder setRequestCodec(ContentCodec codec) {
+            this.requestCodec = codec;
+            return this;
+        }
+
+        /**
+         * Declares that the records are sorted by shard, then by row and column.
+         * <p>
+         * Sorted records are not grouped by shard or sorted before they are imported. Each import thread
+         * imports a shard as soon as the records move past it, so it holds the records of one shard at a time.
+         * Wide records should be sorted by shard, then by column. Records which are not sorted are still
+         * imported, but a shard may be imported in more requests than necessary.
+         *
+         * @param sorted true if the records are sorted
+         * @return ImportOptions builder
+         */
+        public Builder setSorted(boolean sorted) {
+            this.sorted = sorted;
+            return this;
+        }
+
+        /**
+         * Limits the memory used by the records buffered during the import.
+         * <p>
+         * The budget is shared by all import threads. When it is reached, the threads import their largest
+         * shard buffers early and reading from the iterator blocks until there is room in the budget.
+         * The memory used by the records is estimated.
+         *
+         * @param memoryBudget memory budget in bytes, or 0 for no limit
+         * @return ImportOptions builder
+         */
+        public Builder setMemoryBudget(long memoryBudget) {
+            this.memoryBudget = memoryBudget;
+            return this;
+        }
+
+        /**
+         * Enables importing records in two phases using spill files in the given directory.
+         * <p>
+         * The records are first partitioned by shard into spill files, then each shard is read back
+         * and imported in batches. This results in fewer and larger requests when unsorted records span
+         * many shards, at the cost of local disk I/O. Combine with {@link #setRoaring(boolean)}
+         * to send the columns of the shards as roaring bitmaps. Only records with IDs can be spilled.
+         *
+         * @param spillDirectory directory to create the spill files in, or null to import without spilling
+         * @return ImportOptions builder
+         */
+        public Builder setSpillDirectory(String spillDirectory) {
+            this.spillDirectory = spillDirectory;
+            return this;
+        }
+
+        /**
+         * Sets the listener which receives the metrics of the import periodically.
+         * <p>
+         * The listener is called from a separate thread, which is shared by the imports of the client,
+         * so it doesn't slow down the import. The final metrics are reported after the import returns.
+         *
+         * @param listener metrics listener, or null
+         * @return ImportOptions builder
+         */
+        public Builder setMetricsListener(ImportMetricsListener listener) {
+            this.metricsListener = listener;
+            return this;
+        }
+
+        /**
+         * Sets the time between two calls to the metrics listener.
+         *
+         * @param metricsIntervalMs interval in milliseconds
+         * @return ImportOptions builder
+         */
+        public Builder setMetricsIntervalMs(long metricsIntervalMs) {
+            this.metricsIntervalMs = metricsIntervalMs;
+            return this;
+        }
+
+        /**
+         * Sets the store which records how far the import progressed.
+         * <p>
+         * Every checkpoint interval, the records read so far are imported and, once they are acknowledged,
+         * their count is saved to the store. An import which failed can then be resumed
+         * with {@link #setResume(boolean)}. Checkpoints are supported for imports from a single iterator or cursor.
+         *
+         * @param checkpointStore checkpoint store, or null to import without checkpoints
+         * @return ImportOptions builder
+         * @see FileImportCheckpointStore
+         */
+        public Builder setCheckpointStore(ImportCheckpointStore checkpointStore) {
+            this.checkpointStore = checkpointStore;
+            return this;
+        }
+
+        /**
+         * Sets the number of records read between two checkpoints.
+         * <p>
+         * Each checkpoint imports the records held by the import threads regardless of the batch size,
+         * so a small interval results in many small import requests. The default is 10,000,000 records.
+         *
+         * @param checkpointInterval number of records
+         * @return ImportOptions builder
+         */
+        public Builder setCheckpointInterval(long checkpointInterval) {
+            this.checkpointInterval = checkpointInterval;
+            return this;
+        }
+
+        /**
+         * Resumes the import from the last checkpoint in the checkpoint store.
+         * <p>
+         * The records imported before the checkpoint are read from the iterator but not imported again,
+         * so resuming still reads and parses the input up to the checkpoint.
+         * Otherwise the import starts from the first record and replaces the checkpoints in the store.
+         *
+         * @param resume true to resume from the last checkpoint
+         * @return ImportOptions builder
+         */
+        public Builder setResume(boolean resume) {
+            this.resume = resume;
+            return this;
+        }
+
+        /**
+         * Adapts the number of requests in flight to each node to the load of the node.
+         * <p>
+         * The limit of a node is halved when the node rejects requests with 429 or 503, requests time out,
+         * or the request latency exceeds {@link #setNodeTargetLatencyMs(long)}. Rejections and timeouts also pause
+         * the requests to that node. The limit grows back while the node keeps up, up to
+         * {@link #setMaxInFlightPerNode(int)}.
+         *
+         * @param adaptiveThrottling true to adapt the requests in flight per node
+         * @return ImportOptions builder
+         */
+        public Builder setAdaptiveThrottling(boolean adaptiveThrottling) {
+            this.adaptiveThrottling = adaptiveThrottling;
+            return this;
+        }
+
+        /**
+         * Sets the request latency above which a node is considered overloaded by adaptive throttling.
+         *
+         * @param nodeTargetLatencyMs latency in milliseconds, or 0 to throttle on rejections and timeouts only
+         * @return ImportOptions builder
+         */
+        public Builder setNodeTargetLatencyMs(long nodeTargetLatencyMs) {
+            this.nodeTargetLatencyMs = nodeTargetLatencyMs;
+            return this;
+        }
+
+        /**
+         * Schedules the import by the nodes which own the shards.
+         * <p>
+         * The shards of each node are spread over the import threads, instead of being assigned by shard number.
+         * The import threads don't wait for a busy node: batches wait in a queue for their node and shard,
+         * and are sent by the first free sender thread once the node accepts more requests. The batches
+         * of a shard are still sent in order. Records of indexes with keys are assigned by key as before.
+         *
+         * @param nodeScheduling true to schedule the import by node
+         * @return ImportOptions builder
+         */
+        public Builder setNodeScheduling(boolean nodeScheduling) {
+            this.nodeScheduling = nodeScheduling;
+            return this;
+        }
+
         private int threadCount = 1;
         private long timeoutMs = 100;
         private int batchSize = 100000;
         private Strategy strategy = Strategy.BATCH;
         private boolean roaring = false;
         private boolean clear = false;
+        private int maxInFlightPerNode = 2;
+        private int replicaQuorum = 0;
+        private long retryBackoffMs = 100;
+        private long targetLatencyMs = 0;
+        private int minBatchSize = 1000;
+        private int maxBatchSize = 1000000;
+        private ContentCodec requestCodec = null;
+        private boolean sorted = false;
+        private long memoryBudget = 0;
+        private String spillDirectory = null;
+        private ImportMetricsListener metricsListener = null;
+        private long metricsIntervalMs = 1000;
+        private ImportCheckpointStore checkpointStore = null;
+        private long checkpointInterval = 10000000;
+        private boolean resume = false;
+        private boolean adaptiveThrottling = false;
+        private long nodeTargetLatencyMs = 0;
+        private boolean nodeScheduling = false;
     }
 
     private ImportOptions(int threadCount,
@@ -95,13 +371,49 @@ public class ImportOptions {
                           int batchSize,
                           Strategy strategy,
                           boolean roaring,
-                          boolean clear) {
+                          boolean clear,
+                          int maxInFlightPerNode,
+                          int replicaQuorum,
+                          long retryBackoffMs,
+                          long targetLatencyMs,
+                          int minBatchSize,
+                          int maxBatchSize,
+                          ContentCodec requestCodec,
+                          boolean sorted,
+                          long memoryBudget,
+                          String spillDirectory,
+                          ImportMetricsListener metricsListener,
+                          long metricsIntervalMs,
+                          ImportCheckpointStore checkpointStore,
+                          long checkpointInterval,
+                          boolean resume,
+                          boolean adaptiveThrottling,
+                          long nodeTargetLatencyMs,
+                          boolean nodeScheduling) {
         this.threadCount = threadCount;
         this.timeoutMs = timeoutMs;
         this.batchSize = batchSize;
         this.strategy = strategy;
         this.roaring = roaring;
         this.clear = clear;
+        this.maxInFlightPerNode = maxInFlightPerNode;
+        this.replicaQuorum = replicaQuorum;
+        this.retryBackoffMs = retryBackoffMs;
+        this.targetLatencyMs = targetLatencyMs;
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.requestCodec = requestCodec;
+        this.sorted = sorted;
+        this.memoryBudget = memoryBudget;
+        this.spillDirectory = spillDirectory;
+        this.metricsListener = metricsListener;
+        this.metricsIntervalMs = metricsIntervalMs;
+        this.checkpointStore = checkpointStore;
+        this.checkpointInterval = checkpointInterval;
+        this.resume = resume;
+        this.adaptiveThrottling = adaptiveThrottling;
+        this.nodeTargetLatencyMs = nodeTargetLatencyMs;
+        this.nodeScheduling = nodeScheduling;
     }
 
     public static Builder builder() {
@@ -136,10 +448,100 @@ public class ImportOptions {
         return this.clear;
     }
 
+    public int getMaxInFlightPerNode() {
+        return this.maxInFlightPerNode;
+    }
+
+    public int getReplicaQuorum() {
+        return this.replicaQuorum;
+    }
+
+    public long getRetryBackoffMs() {
+        return this.retryBackoffMs;
+    }
+
+    public long getTargetLatencyMs() {
+        return this.targetLatencyMs;
+    }
+
+    public int getMinBatchSize() {
+        return this.minBatchSize;
+    }
+
+    public int getMaxBatchSize() {
+        return this.maxBatchSize;
+    }
+
+    public ContentCodec getRequestCodec() {
+        return this.requestCodec;
+    }
+
+    public boolean isSorted() {
+        return this.sorted;
+    }
+
+    public long getMemoryBudget() {
+        return this.memoryBudget;
+    }
+
+    public String getSpillDirectory() {
+        return this.spillDirectory;
+    }
+
+    public ImportMetricsListener getMetricsListener() {
+        return this.metricsListener;
+    }
+
+    public long getMetricsIntervalMs() {
+        return this.metricsIntervalMs;
+    }
+
+    public ImportCheckpointStore getCheckpointStore() {
+        return this.checkpointStore;
+    }
+
+    public long getCheckpointInterval() {
+        return this.checkpointInterval;
+    }
+
+    public boolean isResume() {
+        return this.resume;
+    }
+
+    public boolean isAdaptiveThrottling() {
+        return this.adaptiveThrottling;
+    }
+
+    public long getNodeTargetLatencyMs() {
+        return this.nodeTargetLatencyMs;
+    }
+
+    public boolean isNodeScheduling() {
+        return this.nodeScheduling;
+    }
+
     final private int threadCount;
     final private long timeoutMs;
     final private int batchSize;
     final private Strategy strategy;
     final private boolean roaring;
     final private boolean clear;
+    final private int maxInFlightPerNode;
+    final private int replicaQuorum;
+    final private long retryBackoffMs;
+    final private long targetLatencyMs;
+    final private int minBatchSize;
+    final private int maxBatchSize;
+    final private ContentCodec requestCodec;
+    final private boolean sorted;
+    final private long memoryBudget;
+    final private String spillDirectory;
+    final private ImportMetricsListener metricsListener;
+    final private long metricsIntervalMs;
+    final private ImportCheckpointStore checkpointStore;
+    final private long checkpointInterval;
+    final private boolean resume;
+    final private boolean adaptiveThrottling;
+    final private long nodeTargetLatencyMs;
+    final private boolean nodeScheduling;
 }
@@ -34,17 +34,30 @@
 
 package com.pilosa.client;
 
+import com.pilosa.client.exceptions.PilosaException;
 import com.pilosa.client.orm.Field;
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.message.BasicHeader;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
 import static com.pilosa.client.PilosaClient.PQL_VERSION;
 
 class ImportRequest {
     ImportRequest(final String path, final byte[] payload, final String contentType) {
+        this(path, payload, contentType, null);
+    }
+
+    private ImportRequest(final String path, final byte[] payload, final String contentType, final String contentEncoding) {
         this.path = path;
         this.payload = payload;
         this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
     }
 
     static ImportRequest createCSVImport(final Field field, final byte[] payload, boolean clear) {
@@ -53,11 +66,11 @@ class ImportRequest {
         return new ImportRequest(path, payload, "application/x-protobuf");
     }
 
-    static ImportRequest createRoaringImport(final Field field, long shard, final byte[] payload, boolean clear) {
+    static ImportRequest createRoaringImport(final Field field, long shard, final Map<String, byte[]> views, boolean clear) {
         String clearStr = clear ? "?clear=true" : "";
         String path = String.format("/index/%s/field/%s/import-roaring/%d%s",
                 field.getIndex().getName(), field.getName(), shard, clearStr);
-        return new ImportRequest(path, payload, "application/x-protobuf");
+        return new RoaringImportRequest(path, views, clear);
     }
 
     String getPath() {
@@ -68,6 +81,44 @@ class ImportRequest {
         return this.payload;
     }
 
+    long getContentLength() {
+        return this.payload.length;
+    }
+
+    HttpEntity toHttpEntity() {
+        ByteArrayEntity entity = new ByteArrayEntity(this.payload);
+        entity.setContentEncoding(this.contentEncoding);
+        return entity;
+    }
+
+    /**
+     * Returns a request with the payload compressed by the given codec.
+     * The request is returned unchanged if the codec is null or the payload is small.
+     *
+     * @param codec the codec or null
+     * @return the compressed request
+     */
+    ImportRequest encode(ContentCodec codec) {
+        if (codec == null || this.contentEncoding != null || getContentLength() < Util.MIN_ENCODED_CONTENT_LENGTH) {
+            return this;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) (getContentLength() / 2));
+        try (OutputStream encoded = codec.encode(out)) {
+            writeTo(encoded);
+        } catch (IOException ex) {
+            throw new PilosaException("Error while compressing the import request", ex);
+        }
+        return new ImportRequest(this.path, out.toByteArray(), this.contentType, codec.getContentEncoding());
+    }
+
+    String getContentEncoding() {
+        return this.contentEncoding;
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(this.payload);
+    }
+
     Header[] getHeaders() {
         return new Header[]{
                 new BasicHeader("Content-Type", this.contentType),
@@ -79,4 +130,5 @@ class ImportRequest {
     protected final String path;
     protected final String contentType;
     protected final byte[] payload;
+    private final String contentEncoding;
 }
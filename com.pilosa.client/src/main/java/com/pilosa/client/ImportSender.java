@@ -0,0 +1,500 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import com.pilosa.client.exceptions.HttpError;
+import com.pilosa.client.exceptions.PilosaException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sends encoded import requests to Pilosa nodes.
+ * <p>
+ * Import workers encode a batch, hand the request to the sender and continue with the next batch
+ * while the request is in flight. The number of requests in flight to a single node is limited by
+ * {@link ImportOptions#getMaxInFlightPerNode()}; once the limit is reached, workers block until one
+ * of the requests to that node completes. With {@link ImportOptions#isAdaptiveThrottling()}, the limit
+ * of each node adapts to its load, see {@link NodeThrottle}. Requests are sent on the threads of the client and
+ * also count against the requests in flight of all imports of the client, see {@link ImportEngine}.
+ * <p>
+ * With {@link ImportOptions#isNodeScheduling()}, workers don't wait for a busy node. Instead, the requests
+ * of each shard and node are chained and sent one after the other by the sender threads, which wait for the node.
+ * Workers only wait when too many batches are pending.
+ * <p>
+ * The replicas of a batch are sent concurrently. A batch is acknowledged once the number of replicas
+ * set by {@link ImportOptions#getReplicaQuorum()} accepted it. Failures of the other replicas, after their retries
+ * and failover, are logged and counted by {@link ImportMetrics#getReplicaFailureCount()}; those replicas lag behind.
+ * <p>
+ * Requests which fail because of a connection error or a server side error are retried
+ * {@link ClientOptions#getRetryCount()} times with exponential backoff. If a replica still fails,
+ * the owners of the shard are fetched again and the request is sent to a node which took over the shard, if any.
+ */
+final class ImportSender {
+    ImportSender(PilosaClient client, ImportOptions options, BlockingQueue<ImportStatusUpdate> statusQueue) {
+        this(client, options, statusQueue, null, new ImportMetricsCollector());
+    }
+
+    ImportSender(PilosaClient client, ImportOptions options, BlockingQueue<ImportStatusUpdate> statusQueue,
+                 AdaptiveBatchSize batchSize, ImportMetricsCollector metrics) {
+        this.client = client;
+        this.batchSize = batchSize;
+        this.metrics = metrics;
+        this.maxInFlightPerNode = Math.max(1, options.getMaxInFlightPerNode());
+        this.adaptiveThrottling = options.isAdaptiveThrottling();
+        this.nodeTargetLatencyMs = options.getNodeTargetLatencyMs();
+        this.replicaQuorum = options.getReplicaQuorum();
+        this.retryCount = Math.max(0, client.getOptions().getRetryCount());
+        this.retryBackoffMs = Math.max(0, options.getRetryBackoffMs());
+        this.statusQueue = statusQueue;
+        this.nodeScheduling = options.isNodeScheduling();
+        this.threadCount = Math.max(1, options.getThreadCount());
+        ImportEngine engine = client.importEngine();
+        this.service = engine.tasks();
+        this.share = engine.share();
+    }
+
+    /**
+     * Sends the request to each of the given hosts asynchronously.
+     *
+     * @param threadID  ID of the thread which encoded the request
+     * @param records   records in the request; only the shard, size and key settings are used
+     * @param startTime time the import of the batch started, in milliseconds
+     * @param hosts     hosts to send the request to
+     * @param request   the request
+     * @return the batch which completes after the request is sent to all hosts or failed
+     * @throws InterruptedException if the thread is interrupted while waiting for a node to accept a request
+     * @throws PilosaException      if an earlier request failed
+     */
+    Batch send(long threadID, ShardRecords records, long startTime, List<String> hosts, ImportRequest request)
+            throws InterruptedException {
+        checkFailure();
+        int hostCount = hosts.size();
+        int required = (this.replicaQuorum > 0) ? Math.min(this.replicaQuorum, hostCount) : hostCount;
+        Batch batch = new Batch(threadID, records, startTime, hosts, required);
+        if (this.nodeScheduling && hostCount > 0) {
+            awaitPendingRoom();
+            for (String host : hosts) {
+                schedule(new Send(batch, host, request, throttle(host), false));
+            }
+            return batch;
+        }
+        for (String host : hosts) {
+            NodeThrottle throttle = throttle(host);
+            throttle.acquire();
+            try {
+                this.service.submit(new Send(batch, host, request, throttle, true));
+            } catch (RejectedExecutionException e) {
+                throttle.release();
+                throw new PilosaException("Import sender is closed", e);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Waits for all requests in flight to complete.
+     *
+     * @throws PilosaException if one of the requests failed
+     */
+    void close() throws InterruptedException {
+        try {
+            // chained requests are submitted before the requests they follow complete
+            this.service.awaitCompletion();
+        } finally {
+            this.share.close();
+        }
+        checkFailure();
+    }
+
+    /**
+     * Stops sending requests without waiting for the requests in flight.
+     */
+    void abort() {
+        this.service.cancel();
+        this.share.close();
+    }
+
+    /**
+     * Returns whether sending a request again may succeed after the given error.
+     */
+    static boolean isRetryable(Throwable error) {
+        if (error instanceof HttpError) {
+            int statusCode = ((HttpError) error).getStatusCode();
+            return statusCode == 429 || statusCode >= 500;
+        }
+        return error.getCause() instanceof IOException;
+    }
+
+    /**
+     * Returns the time to wait before the given retry, with jitter.
+     * The backoff doubles with each retry up to {@link #MAX_RETRY_BACKOFF_MS}; the actual wait is
+     * a random time between half of the backoff and the backoff.
+     */
+    static long retryDelayMs(long backoffMs, int retry) {
+        long delay = Math.min(MAX_RETRY_BACKOFF_MS, backoffMs << Math.min(retry, 30));
+        if (delay <= 1) {
+            return delay;
+        }
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+
+    /**
+     * Throws if a batch failed, e.g., to avoid confirming batches which are not all imported.
+     */
+    void checkFailure() {
+        Throwable failure = this.failure.get();
+        if (failure != null) {
+            throw new PilosaException("Error while importing", failure);
+        }
+    }
+
+    /**
+     * Returns whether the given error shows that the node is overloaded: it rejected the request
+     * with 429 or 503, or the request timed out.
+     */
+    static boolean isOverloaded(Throwable error) {
+        if (error instanceof HttpError) {
+            int statusCode = ((HttpError) error).getStatusCode();
+            return statusCode == 429 || statusCode == 503;
+        }
+        return error.getCause() instanceof InterruptedIOException;
+    }
+
+    private synchronized NodeThrottle throttle(String host) {
+        NodeThrottle throttle = this.nodeThrottles.get(host);
+        if (throttle == null) {
+            throttle = new NodeThrottle(this.maxInFlightPerNode, this.adaptiveThrottling, this.nodeTargetLatencyMs,
+                    this.retryBackoffMs);
+            this.nodeThrottles.put(host, throttle);
+        }
+        return throttle;
+    }
+
+    private void sendWithRetries(String host, NodeThrottle throttle, ImportRequest request, int recordCount)
+            throws InterruptedException {
+        for (int retry = 0; ; retry++) {
+            // the share of the import of the requests in flight of the client isn't held during the backoff
+            this.share.acquire();
+            long startTime = System.currentTimeMillis();
+            long tic = System.nanoTime();
+            PilosaException error = null;
+            try {
+                this.client.importNode(host, request);
+            } catch (PilosaException e) {
+                error = e;
+            } finally {
+                this.share.release();
+            }
+            long elapsed = System.nanoTime() - tic;
+            this.metrics.addRequest(host, recordCount, request.getContentLength(), elapsed, error == null);
+            throttle.observe(startTime, TimeUnit.NANOSECONDS.toMillis(elapsed), error != null && isOverloaded(error));
+            if (error == null) {
+                return;
+            }
+            if (retry >= this.retryCount || !isRetryable(error) || this.failure.get() != null) {
+                throw error;
+            }
+            this.metrics.addRetry();
+            long delay = retryDelayMs(this.retryBackoffMs, retry);
+            logger.warn(String.format("Import to %s failed, retrying in %d ms: %s", host, delay, error.getMessage()));
+            Thread.sleep(delay);
+        }
+    }
+
+    /**
+     * Returns a node which owns the shard of the batch now, but was not one of its original hosts.
+     */
+    private String failoverHost(Batch batch) {
+        List<String> hosts;
+        try {
+            hosts = this.client.refreshImportHosts(batch.indexName, batch.shard, batch.keys);
+        } catch (PilosaException e) {
+            logger.warn("Could not fetch the nodes for shard {}: {}", batch.shard, e.getMessage());
+            return null;
+        }
+        synchronized (batch.hosts) {
+            for (String host : hosts) {
+                if (batch.hosts.add(host)) {
+                    return host;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void complete(Batch batch, String host, Throwable error) {
+        if (error == null) {
+            if (batch.succeeded.incrementAndGet() == batch.required) {
+                acknowledge(batch);
+            }
+        } else {
+            int failed = batch.failed.incrementAndGet();
+            int tolerated = batch.hostCount - batch.required;
+            if (failed > tolerated) {
+                this.failure.compareAndSet(null, error);
+            } else {
+                this.metrics.addReplicaFailure(host);
+                logger.warn(String.format("Import to %s failed for shard %d, continuing with the other replicas",
+                        host, batch.shard), error);
+            }
+        }
+        if (batch.remaining.decrementAndGet() == 0) {
+            batch.done.countDown();
+            if (this.nodeScheduling) {
+                synchronized (this.pendingLock) {
+                    this.pendingBatches--;
+                    this.pendingLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until the number of pending batches is below the limit, and counts a new batch.
+     * <p>
+     * The limit allows a batch per worker in addition to the requests the nodes accept.
+     */
+    private void awaitPendingRoom() throws InterruptedException {
+        int nodeCount;
+        synchronized (this) {
+            nodeCount = this.nodeThrottles.size();
+        }
+        int maxPending = 2 * this.threadCount + nodeCount * this.maxInFlightPerNode;
+        synchronized (this.pendingLock) {
+            while (this.pendingBatches >= maxPending) {
+                this.pendingLock.wait();
+            }
+            this.pendingBatches++;
+        }
+    }
+
+    /**
+     * Sends the request after the earlier requests of the same shard to the same node.
+     */
+    private void schedule(Send send) {
+        synchronized (this.lastSends) {
+            Send last = this.lastSends.put(send.key, send);
+            if (last != null) {
+                last.next = send;
+                return;
+            }
+        }
+        execute(send);
+    }
+
+    /**
+     * Sends the request chained after the given one, if any.
+     */
+    private void scheduleNext(Send send) {
+        Send next;
+        synchronized (this.lastSends) {
+            next = send.next;
+            if (next == null) {
+                this.lastSends.remove(send.key);
+            }
+        }
+        if (next != null) {
+            execute(next);
+        }
+    }
+
+    private void execute(Send send) {
+        try {
+            this.service.submit(send);
+        } catch (RejectedExecutionException e) {
+            // the sender was aborted
+            complete(send.batch, send.host, e);
+            scheduleNext(send);
+        }
+    }
+
+    private void acknowledge(Batch batch) {
+        long timeMs = System.currentTimeMillis() - batch.startTime;
+        this.metrics.addImported(batch.count);
+        if (this.batchSize != null) {
+            this.batchSize.observe(batch.count, batch.startTime, timeMs);
+        }
+        if (this.statusQueue != null && this.failure.get() == null) {
+            ImportStatusUpdate statusUpdate = new ImportStatusUpdate(batch.threadID, batch.shard, batch.count, timeMs);
+            try {
+                this.statusQueue.offer(statusUpdate, 1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * A batch sent to one or more nodes.
+     */
+    static final class Batch {
+        private Batch(long threadID, ShardRecords records, long startTime, List<String> hosts, int required) {
+            this.threadID = threadID;
+            this.indexName = records.getIndexName();
+            this.shard = records.getShard();
+            this.count = records.size();
+            this.keys = records.isIndexKeys() || records.isFieldKeys();
+            this.startTime = startTime;
+            this.hosts = new HashSet<>(hosts);
+            this.hostCount = hosts.size();
+            this.required = required;
+            this.remaining = new AtomicInteger(this.hostCount);
+            this.done = new CountDownLatch(1);
+            if (this.hostCount == 0) {
+                this.done.countDown();
+            }
+        }
+
+        /**
+         * Waits until the batch is sent to all nodes or fails.
+         */
+        void await() throws InterruptedException {
+            this.done.await();
+        }
+
+        private final long threadID;
+        private final String indexName;
+        private final long shard;
+        private final int count;
+        private final boolean keys;
+        private final long startTime;
+        private final Set<String> hosts;
+        private final int hostCount;
+        private final int required;
+        private final AtomicInteger succeeded = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger remaining;
+        private final CountDownLatch done;
+    }
+
+    private final class Send implements Runnable {
+        /**
+         * @param acquired true if the worker acquired the throttle of the node, otherwise the sender thread does
+         */
+        Send(Batch batch, String host, ImportRequest request, NodeThrottle throttle, boolean acquired) {
+            this.batch = batch;
+            this.host = host;
+            this.request = request;
+            this.throttle = throttle;
+            this.acquired = acquired;
+            this.key = host + "/" + batch.indexName + "/" + batch.shard;
+        }
+
+        @Override
+        public void run() {
+            Throwable error = null;
+            NodeThrottle throttle = this.acquired ? this.throttle : null;
+            try {
+                if (failure.get() != null) {
+                    return;
+                }
+                if (throttle == null) {
+                    this.throttle.acquire();
+                    throttle = this.throttle;
+                }
+                try {
+                    sendWithRetries(this.host, throttle, this.request, this.batch.count);
+                } catch (PilosaException e) {
+                    if (!isRetryable(e)) {
+                        throw e;
+                    }
+                    String failoverHost = failoverHost(this.batch);
+                    if (failoverHost == null) {
+                        throw e;
+                    }
+                    logger.warn("Import to {} failed, sending shard {} to {}", this.host, this.batch.shard, failoverHost);
+                    metrics.addFailover();
+                    throttle.release();
+                    throttle = null;
+                    NodeThrottle failoverThrottle = throttle(failoverHost);
+                    failoverThrottle.acquire();
+                    throttle = failoverThrottle;
+                    sendWithRetries(failoverHost, throttle, this.request, this.batch.count);
+                }
+            } catch (Throwable e) {
+                error = e;
+            } finally {
+                if (throttle != null) {
+                    throttle.release();
+                }
+                complete(this.batch, this.host, error);
+                if (!this.acquired) {
+                    scheduleNext(this);
+                }
+            }
+        }
+
+        private final Batch batch;
+        private final String host;
+        private final ImportRequest request;
+        private final NodeThrottle throttle;
+        private final boolean acquired;
+        // identifies the shard and node, the requests with the same key are sent in order
+        private final String key;
+        // guarded by lastSends
+        private Send next = null;
+    }
+
+    static final long MAX_RETRY_BACKOFF_MS = 10000;
+    private static final Logger logger = LoggerFactory.getLogger("pilosa");
+    private final PilosaClient client;
+    private final int maxInFlightPerNode;
+    private final boolean adaptiveThrottling;
+    private final long nodeTargetLatencyMs;
+    private final int replicaQuorum;
+    private final int retryCount;
+    private final long retryBackoffMs;
+    private final BlockingQueue<ImportStatusUpdate> statusQueue;
+    private final AdaptiveBatchSize batchSize;
+    private final ImportMetricsCollector metrics;
+    private final ImportTasks service;
+    private final ImportEngine.Share share;
+    private final Map<String, NodeThrottle> nodeThrottles = new HashMap<>();
+    private final boolean nodeScheduling;
+    private final int threadCount;
+    // the last request scheduled for each shard and node
+    private final Map<String, Send> lastSends = new HashMap<>();
+    private final Object pendingLock = new Object();
+    private int pendingBatches = 0;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+}
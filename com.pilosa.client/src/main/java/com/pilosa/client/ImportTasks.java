@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * The tasks of an import, running on the shared threads of the client.
+ * <p>
+ * Takes the place of an executor owned by the import: the tasks can be waited for or cancelled
+ * together, without shutting down the threads, which other imports use.
+ */
+final class ImportTasks {
+    ImportTasks(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Runs the given task.
+     *
+     * @throws RejectedExecutionException if the tasks were cancelled or the client is closed
+     */
+    <T> Future<T> submit(Callable<T> callable) {
+        final FutureTask<T> task = new FutureTask<>(callable);
+        synchronized (this) {
+            if (this.cancelled) {
+                throw new RejectedExecutionException("Import tasks are cancelled");
+            }
+            this.running.add(task);
+        }
+        try {
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        finished(task);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            finished(task);
+            throw e;
+        }
+        return task;
+    }
+
+    /**
+     * Runs the given task.
+     *
+     * @throws RejectedExecutionException if the tasks were cancelled or the client is closed
+     */
+    Future<?> submit(Runnable runnable) {
+        return submit(Executors.callable(runnable));
+    }
+
+    /**
+     * Waits until all tasks complete, including the tasks submitted while waiting.
+     */
+    synchronized void awaitCompletion() throws InterruptedException {
+        while (!this.running.isEmpty()) {
+            wait();
+        }
+    }
+
+    /**
+     * Interrupts the running tasks and rejects new ones.
+     */
+    void cancel() {
+        Set<FutureTask<?>> tasks;
+        synchronized (this) {
+            this.cancelled = true;
+            tasks = new HashSet<>(this.running);
+        }
+        for (FutureTask<?> task : tasks) {
+            task.cancel(true);
+        }
+    }
+
+    private synchronized void finished(FutureTask<?> task) {
+        this.running.remove(task);
+        if (this.running.isEmpty()) {
+            notifyAll();
+        }
+    }
+
+    private final ExecutorService executor;
+    // guarded by this
+    private final Set<FutureTask<?>> running = new HashSet<>();
+    private boolean cancelled = false;
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import java.util.Arrays;
+
+/**
+ * Size bounded cache of key to ID translations.
+ * <p>
+ * Entries are kept in parallel arrays and indexed with an open addressing hash table,
+ * so the cache does not allocate per entry. The arrays start small and grow up to the capacity,
+ * so caches of small indexes and fields stay small. When the cache is full, an entry is evicted
+ * using the CLOCK algorithm: entries which were hit since the clock hand passed them
+ * get a second chance.
+ */
+final class KeyCache {
+    KeyCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Key cache capacity must be positive");
+        }
+        this.capacity = capacity;
+        int length = Math.min(capacity, INITIAL_LENGTH);
+        this.keys = new String[length];
+        this.ids = new long[length];
+        this.referenced = new boolean[length];
+        this.table = newTable(length);
+    }
+
+    /**
+     * Looks up the given keys.
+     *
+     * @param keys  keys to look up
+     * @param size  number of keys
+     * @param ids   receives the IDs of the found keys
+     * @param found receives whether a key was found
+     * @return number of keys found
+     */
+    synchronized int lookup(String[] keys, int size, long[] ids, boolean[] found) {
+        int hits = 0;
+        for (int i = 0; i < size; i++) {
+            int slot = this.table[position(keys[i])];
+            if (slot == EMPTY) {
+                found[i] = false;
+                continue;
+            }
+            ids[i] = this.ids[slot];
+            this.referenced[slot] = true;
+            found[i] = true;
+            hits++;
+        }
+        this.hits += hits;
+        this.misses += size - hits;
+        return hits;
+    }
+
+    synchronized void put(String[] keys, long[] ids, int size) {
+        for (int i = 0; i < size; i++) {
+            put(keys[i], ids[i]);
+        }
+    }
+
+    synchronized KeyCacheStatistics getStatistics() {
+        return new KeyCacheStatistics(this.hits, this.misses, this.evictions, this.size);
+    }
+
+    private void put(String key, long id) {
+        int slot = this.table[position(key)];
+        if (slot != EMPTY) {
+            this.ids[slot] = id;
+            return;
+        }
+        if (this.size < this.capacity) {
+            if (this.size == this.keys.length) {
+                grow();
+            }
+            slot = this.size++;
+        } else {
+            slot = evict();
+        }
+        this.keys[slot] = key;
+        this.ids[slot] = id;
+        this.referenced[slot] = false;
+        // the position may have changed while evicting
+        this.table[position(key)] = slot;
+    }
+
+    private void grow() {
+        int length = (int) Math.min(this.capacity, 2L * this.keys.length);
+        this.keys = Arrays.copyOf(this.keys, length);
+        this.ids = Arrays.copyOf(this.ids, length);
+        this.referenced = Arrays.copyOf(this.referenced, length);
+        int[] table = newTable(length);
+        if (table.length == this.table.length) {
+            return;
+        }
+        this.table = table;
+        for (int slot = 0; slot < this.size; slot++) {
+            this.table[position(this.keys[slot])] = slot;
+        }
+    }
+
+    private static int[] newTable(int length) {
+        // keep the load factor of the hash table at most 0.5
+        int[] table = new int[Integer.highestOneBit(length) << 2];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    private int evict() {
+        while (this.referenced[this.hand]) {
+            this.referenced[this.hand] = false;
+            this.hand = (this.hand + 1) % this.capacity;
+        }
+        int slot = this.hand;
+        this.hand = (this.hand + 1) % this.capacity;
+        remove(position(this.keys[slot]));
+        this.keys[slot] = null;
+        this.evictions++;
+        return slot;
+    }
+
+    private void remove(int position) {
+        // backward shift deletion keeps the probe sequences intact without tombstones
+        int mask = this.table.length - 1;
+        int hole = position;
+        this.table[hole] = EMPTY;
+        int i = hole;
+        while (true) {
+            i = (i + 1) & mask;
+            int slot = this.table[i];
+            if (slot == EMPTY) {
+                return;
+            }
+            int home = hash(this.keys[slot]) & mask;
+            boolean movable = (hole <= i) ? (home <= hole || home > i) : (home <= hole && home > i);
+            if (movable) {
+                this.table[hole] = slot;
+                this.table[i] = EMPTY;
+                hole = i;
+            }
+        }
+    }
+
+    /**
+     * Returns the position of the key in the hash table, or the empty position where it should be inserted.
+     */
+    private int position(String key) {
+        int mask = this.table.length - 1;
+        int i = hash(key) & mask;
+        while (true) {
+            int slot = this.table[i];
+            if (slot == EMPTY || this.keys[slot].equals(key)) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static final int EMPTY = -1;
+    private static final int INITIAL_LENGTH = 256;
+    private final int capacity;
+    private String[] keys;
+    private long[] ids;
+    private boolean[] referenced;
+    private int[] table;
+    private int size = 0;
+    private int hand = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+}
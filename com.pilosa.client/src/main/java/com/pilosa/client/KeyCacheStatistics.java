@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+/**
+ * Contains the statistics of a key translation cache.
+ *
+ * @see PilosaClient#getColumnKeyCacheStatistics(com.pilosa.client.orm.Index)
+ * @see PilosaClient#getRowKeyCacheStatistics(com.pilosa.client.orm.Field)
+ */
+public final class KeyCacheStatistics {
+    /**
+     * Returns the number of keys which were found in the cache.
+     *
+     * @return hit count
+     */
+    public long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * Returns the number of keys which were not found in the cache.
+     *
+     * @return miss count
+     */
+    public long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * Returns the number of keys removed from the cache to make room for other keys.
+     *
+     * @return eviction count
+     */
+    public long getEvictions() {
+        return this.evictions;
+    }
+
+    /**
+     * Returns the number of keys in the cache.
+     *
+     * @return number of keys
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits:%d misses:%d evictions:%d size:%d",
+                this.hits, this.misses, this.evictions, this.size);
+    }
+
+    KeyCacheStatistics(long hits, long misses, long evictions, int size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+    }
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int size;
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import java.util.Arrays;
+
+/**
+ * Distribution of request latencies.
+ * <p>
+ * Latencies are counted in buckets with power of two bounds: the first bucket holds latencies under
+ * 1 millisecond, the next one latencies under 2 milliseconds, then under 4 milliseconds and so on.
+ */
+public final class LatencyHistogram {
+    /**
+     * Returns the number of latencies in the histogram.
+     *
+     * @return number of latencies
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * Returns the number of buckets.
+     *
+     * @return number of buckets
+     */
+    public int getBucketCount() {
+        return this.counts.length;
+    }
+
+    /**
+     * Returns the number of latencies in the given bucket.
+     *
+     * @param bucket bucket index
+     * @return number of latencies
+     */
+    public long getCount(int bucket) {
+        return this.counts[bucket];
+    }
+
+    /**
+     * Returns the exclusive upper bound of the given bucket.
+     *
+     * @param bucket bucket index
+     * @return upper bound in milliseconds
+     */
+    public long getUpperBoundMs(int bucket) {
+        return 1L << bucket;
+    }
+
+    /**
+     * Returns the upper bound of the bucket which holds the given percentile.
+     *
+     * @param percentile percentile between 0 and 100
+     * @return upper bound in milliseconds, or 0 if the histogram is empty
+     */
+    public long getPercentileMs(double percentile) {
+        if (this.count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(this.count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < this.counts.length; i++) {
+            seen += this.counts[i];
+            if (seen >= rank) {
+                return Math.min(getUpperBoundMs(i), this.maxMs);
+            }
+        }
+        return this.maxMs;
+    }
+
+    public double getMeanMs() {
+        return (this.count == 0) ? 0 : (double) this.totalMs / this.count;
+    }
+
+    public long getMaxMs() {
+        return this.maxMs;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count:%d mean:%.1f ms p50:%d ms p99:%d ms max:%d ms",
+                this.count, getMeanMs(), getPercentileMs(50), getPercentileMs(99), this.maxMs);
+    }
+
+    static int bucket(long ms) {
+        if (ms <= 0) {
+            return 0;
+        }
+        return Math.min(BUCKET_COUNT - 1, Long.SIZE - Long.numberOfLeadingZeros(ms));
+    }
+
+    LatencyHistogram(long[] counts, long totalMs, long maxMs) {
+        long count = 0;
+        for (long c : counts) {
+            count += c;
+        }
+        this.counts = Arrays.copyOf(counts, counts.length);
+        this.count = count;
+        this.totalMs = totalMs;
+        this.maxMs = maxMs;
+    }
+
+    // the last bucket holds latencies of about 9 minutes and longer
+    static final int BUCKET_COUNT = 20;
+
+    private final long[] counts;
+    private final long count;
+    private final long totalMs;
+    private final long maxMs;
+}
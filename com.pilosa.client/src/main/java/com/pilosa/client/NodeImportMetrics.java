@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+/**
+ * Import metrics of a single node.
+ */
+public final class NodeImportMetrics {
+    public String getHost() {
+        return this.host;
+    }
+
+    /**
+     * Returns the number of records imported to the node.
+     *
+     * @return number of records
+     */
+    public long getRecordCount() {
+        return this.recordCount;
+    }
+
+    /**
+     * Returns the number of request bytes sent to the node, after compression.
+     *
+     * @return number of bytes
+     */
+    public long getByteCount() {
+        return this.byteCount;
+    }
+
+    public long getRequestCount() {
+        return this.requestCount;
+    }
+
+    public long getErrorCount() {
+        return this.errorCount;
+    }
+
+    /**
+     * Returns the number of batches the node failed to import, while the replica quorum accepted them.
+     *
+     * @return number of batches missing on the node
+     */
+    public long getReplicaFailureCount() {
+        return this.replicaFailureCount;
+    }
+
+    public double getRecordsPerSecond() {
+        return ImportMetrics.perSecond(this.recordCount, this.elapsedMs);
+    }
+
+    public double getBytesPerSecond() {
+        return ImportMetrics.perSecond(this.byteCount, this.elapsedMs);
+    }
+
+    /**
+     * Returns the latencies of the requests sent to the node, including failed requests.
+     *
+     * @return latency histogram
+     */
+    public LatencyHistogram getLatency() {
+        return this.latency;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s records:%d (%.0f/s) bytes:%d (%.0f/s) requests:%d errors:%d replica failures:%d " +
+                        "latency:[%s]",
+                this.host, this.recordCount, getRecordsPerSecond(), this.byteCount, getBytesPerSecond(),
+                this.requestCount, this.errorCount, this.replicaFailureCount, this.latency);
+    }
+
+    NodeImportMetrics(String host, long elapsedMs, long recordCount, long byteCount,
+                      long requestCount, long errorCount, long replicaFailureCount, LatencyHistogram latency) {
+        this.host = host;
+        this.elapsedMs = elapsedMs;
+        this.recordCount = recordCount;
+        this.byteCount = byteCount;
+        this.requestCount = requestCount;
+        this.errorCount = errorCount;
+        this.replicaFailureCount = replicaFailureCount;
+        this.latency = latency;
+    }
+
+    private final String host;
+    private final long elapsedMs;
+    private final long recordCount;
+    private final long byteCount;
+    private final long requestCount;
+    private final long errorCount;
+    private final long replicaFailureCount;
+    private final LatencyHistogram latency;
+}
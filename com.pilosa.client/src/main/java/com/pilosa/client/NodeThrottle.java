@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the import requests in flight to a single node.
+ * <p>
+ * With a fixed limit, this is a semaphore with {@link ImportOptions#getMaxInFlightPerNode()} permits.
+ * With adaptive throttling, the limit follows the state of the node: it is halved when the node is overloaded,
+ * i.e., it rejects a request with 429 or 503, a request times out, or its latency exceeds the target,
+ * and it grows by about one request per round trip while the node keeps up. Rejections and timeouts also
+ * pause new requests to the node; the pause starts at the retry backoff and doubles while the node stays overloaded.
+ * Only requests which started after the last decrease can decrease the limit again, so the requests which were
+ * already in flight when the node got overloaded don't shrink it repeatedly.
+ */
+final class NodeThrottle {
+    NodeThrottle(int maxInFlight, boolean adaptive, long targetLatencyMs, long backoffMs) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.adaptive = adaptive;
+        this.targetLatencyMs = targetLatencyMs;
+        this.initialBackoffMs = Math.max(1, backoffMs);
+        this.backoffMs = this.initialBackoffMs;
+        this.limit = this.maxInFlight;
+    }
+
+    /**
+     * Waits until a request can be sent to the node.
+     */
+    synchronized void acquire() throws InterruptedException {
+        while (true) {
+            if (this.inFlight < (int) this.limit) {
+                long pause = this.pauseUntil - System.currentTimeMillis();
+                if (pause <= 0) {
+                    this.inFlight++;
+                    return;
+                }
+                TimeUnit.MILLISECONDS.timedWait(this, pause);
+            } else {
+                wait();
+            }
+        }
+    }
+
+    /**
+     * Signals that a request to the node completed.
+     */
+    synchronized void release() {
+        this.inFlight--;
+        notifyAll();
+    }
+
+    /**
+     * Adjusts the limit using the outcome of a request.
+     *
+     * @param startTime  time the request started, in milliseconds
+     * @param latencyMs  time it took to complete the request, in milliseconds
+     * @param overloaded true if the node rejected the request as overloaded or it timed out
+     */
+    synchronized void observe(long startTime, long latencyMs, boolean overloaded) {
+        if (!this.adaptive) {
+            return;
+        }
+        long now = startTime + latencyMs;
+        if (overloaded || (this.targetLatencyMs > 0 && latencyMs > this.targetLatencyMs)) {
+            if (startTime >= this.lastDecreaseTime) {
+                this.limit = Math.max(1, this.limit / 2);
+                this.lastDecreaseTime = now;
+            }
+            if (overloaded) {
+                this.pauseUntil = Math.max(this.pauseUntil, now + this.backoffMs);
+                this.backoffMs = Math.min(ImportSender.MAX_RETRY_BACKOFF_MS, this.backoffMs * 2);
+            }
+        } else {
+            // additive increase, about one request per round trip at the current limit
+            this.limit = Math.min(this.maxInFlight, this.limit + 1 / this.limit);
+            this.backoffMs = this.initialBackoffMs;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Returns the current number of requests allowed in flight.
+     */
+    synchronized int getLimit() {
+        return (int) this.limit;
+    }
+
+    private final int maxInFlight;
+    private final boolean adaptive;
+    private final long targetLatencyMs;
+    private final long initialBackoffMs;
+    private long backoffMs;
+    private double limit;
+    private int inFlight = 0;
+    private long pauseUntil = 0;
+    private long lastDecreaseTime = 0;
+}
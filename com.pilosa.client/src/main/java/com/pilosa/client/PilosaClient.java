@@ -37,7 +37,10 @@ package com.pilosa.client;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
 import com.pilosa.client.exceptions.HttpConflict;
+import com.pilosa.client.exceptions.HttpError;
 import com.pilosa.client.exceptions.PilosaException;
 import com.pilosa.client.exceptions.PilosaURIException;
 import com.pilosa.client.exceptions.ValidationException;
@@ -168,6 +171,13 @@ public class PilosaClient implements AutoCloseable {
     }
 
     public void close() throws IOException {
+        synchronized (this) {
+            if (this.importEngine != null) {
+                // imports already started run to completion
+                this.importEngine.shutdown();
+                this.importEngine = null;
+            }
+        }
         if (this.client != null) {
             this.client.close();
             this.client = null;
@@ -288,6 +298,8 @@ public class PilosaClient implements AutoCloseable {
             String path = String.format("/index/%s", index.getName());
             clientExecute("DELETE", path, null, null, "Error while deleting index");
         } finally {
+            // an index created later with the same name has different IDs
+            dropKeyCaches(index.getName(), null);
             span.finish();
         }
     }
@@ -305,6 +317,7 @@ public class PilosaClient implements AutoCloseable {
             String path = String.format("/index/%s/field/%s", field.getIndex().getName(), field.getName());
             clientExecute("DELETE", path, null, null, "Error while deleting field");
         } finally {
+            dropKeyCaches(field.getIndex().getName(), field.getName());
             span.finish();
         }
     }
@@ -367,6 +380,200 @@ public class PilosaClient implements AutoCloseable {
         }
     }
 
+    /**
+     * Imports bits to the given index and field, reading several iterators concurrently.
+     * <p>
+     * Each iterator is read by its own thread, so reading and routing the records
+     * is not limited to a single thread. The iterators may return records in any order;
+     * sorted imports and spill files are supported for a single iterator.
+     *
+     * @param field     specify the field
+     * @param iterators specify the bit iterators, e.g., one for each input file
+     * @param options   specify the import options
+     * @throws PilosaException if the import cannot be completed
+     * @see #importField(Field, RecordIterator, ImportOptions)
+     */
+    @SuppressWarnings("WeakerAccess")
+    public void importField(Field field, List<? extends RecordIterator> iterators, ImportOptions options) {
+        importField(field, iterators, options, null);
+    }
+
+    /**
+     * Imports bits to the given index and field, reading several iterators concurrently.
+     * <p>
+     * Each iterator is read by its own thread, so reading and routing the records
+     * is not limited to a single thread. The iterators may return records in any order;
+     * sorted imports and spill files are supported for a single iterator.
+     *
+     * @param field       specify the field
+     * @param iterators   specify the bit iterators, e.g., one for each input file
+     * @param options     specify the import options
+     * @param statusQueue specify the status queue for tracking import process
+     * @throws PilosaException if the import cannot be completed
+     * @see #importField(Field, RecordIterator, ImportOptions, BlockingQueue)
+     */
+    @SuppressWarnings("WeakerAccess")
+    public void importField(Field field, List<? extends RecordIterator> iterators, ImportOptions options,
+                            final BlockingQueue<ImportStatusUpdate> statusQueue) {
+        Span span = this.tracer.buildSpan("Client.ImportField").start();
+        try {
+            BitImportManager manager = new BitImportManager(options);
+            manager.run(this, Collections.singletonList(field), iterators, statusQueue, null);
+        } finally {
+            span.finish();
+        }
+    }
+
+    /**
+     * Imports records with IDs read from a cursor to the given index and field.
+     * <p>
+     * The records are passed to the import threads in primitive arrays, without creating an object for each record.
+     * Pilosa queries may return inconsistent results while importing data.
+     *
+     * @param field   specify the field
+     * @param cursor  specify the record cursor
+     * @param options specify the import options
+     * @throws PilosaException if the import cannot be completed
+     * @see RecordIteratorCursor
+     */
+    @SuppressWarnings("WeakerAccess")
+    public void importField(Field field, RecordCursor cursor, ImportOptions options) {
+        importField(field, cursor, options, null);
+    }
+
+    /**
+     * Imports records with IDs read from a cursor to the given index and field.
+     * <p>
+     * The records are passed to the import threads in primitive arrays, without creating an object for each record.
+     * Pilosa queries may return inconsistent results while importing data.
+     *
+     * @param field       specify the field
+     * @param cursor      specify the record cursor
+     * @param options     specify the import options
+     * @param statusQueue specify the status queue for tracking import process
+     * @throws PilosaException if the import cannot be completed
+     * @see RecordIteratorCursor
+     */
+    @SuppressWarnings("WeakerAccess")
+    public void importField(Field field, RecordCursor cursor, ImportOptions options,
+                            final BlockingQueue<ImportStatusUpdate> statusQueue) {
+        Span span = this.tracer.buildSpan("Client.ImportField").start();
+        try {
+            BitImportManager manager = new BitImportManager(options);
+            manager.run(this, field, cursor, statusQueue, null);
+        } finally {
+            span.finish();
+        }
+    }
+
+    /**
+     * Imports bits to the given index and field in the background.
+     * <p>
+     * The import runs on a thread of the client, the returned handle tracks its progress.
+     *
+     * @param field    specify the field
+     * @param iterator specify the bit iterator
+     * @param options  specify the import options
+     * @return handle to track, flush or cancel the import
+     * @see #importField(Field, RecordIterator, ImportOptions)
+     */
+    @SuppressWarnings("WeakerAccess")
+    public ImportHandle importFieldAsync(Field field, RecordIterator iterator, ImportOptions options) {
+        return importFieldAsync(field, iterator, options, null);
+    }
+
+    /**
+     * Imports bits to the given index and field in the background.
+     * <p>
+     * The import runs on a thread of the client, the returned handle tracks its progress.
+     *
+     * @param field       specify the field
+     * @param iterator    specify the bit iterator
+     * @param options     specify the import options
+     * @param statusQueue specify the status queue for tracking import process
+     * @return handle to track, flush or cancel the import
+     * @see #importField(Field, RecordIterator, ImportOptions, BlockingQueue)
+     */
+    @SuppressWarnings("WeakerAccess")
+    public ImportHandle importFieldAsync(final Field field, final RecordIterator iterator, final ImportOptions options,
+                                         final BlockingQueue<ImportStatusUpdate> statusQueue) {
+        final ImportHandle handle = new ImportHandle(options.getThreadCount());
+        importEngine().tasks().submit(new Runnable() {
+            @Override
+            public void run() {
+                if (!handle.start(Thread.currentThread())) {
+                    return;
+                }
+                Span span = tracer.buildSpan("Client.ImportFieldAsync").start();
+                Throwable error = null;
+                try {
+                    BitImportManager manager = new BitImportManager(options);
+                    manager.run(PilosaClient.this, Collections.singletonList(field), iterator, statusQueue, handle);
+                } catch (Throwable e) {
+                    error = e;
+                } finally {
+                    span.finish();
+                    handle.complete(error);
+                }
+            }
+        });
+        return handle;
+    }
+
+    /**
+     * Imports wide records to several fields of an index in a single pass.
+     * <p>
+     * Each record has a column and a value for each of the given fields, addressed by the position of the field.
+     * Records are read and routed to the import threads once, and their values are
+     * sent in batches per field and shard.
+     * Pilosa queries may return inconsistent results while importing data.
+     *
+     * @param index    specify the index
+     * @param fields   specify the fields of the index to import
+     * @param iterator specify the wide record iterator
+     * @param options  specify the import options
+     * @throws PilosaException if the import cannot be completed
+     */
+    @SuppressWarnings("WeakerAccess")
+    public void importIndex(Index index, List<Field> fields, WideRecordIterator iterator, ImportOptions options) {
+        importIndex(index, fields, iterator, options, null);
+    }
+
+    /**
+     * Imports wide records to several fields of an index in a single pass.
+     * <p>
+     * Each record has a column and a value for each of the given fields, addressed by the position of the field.
+     * Records are read and routed to the import threads once, and their values are
+     * sent in batches per field and shard.
+     * Pilosa queries may return inconsistent results while importing data.
+     *
+     * @param index       specify the index
+     * @param fields      specify the fields of the index to import
+     * @param iterator    specify the wide record iterator
+     * @param options     specify the import options
+     * @param statusQueue specify the status queue for tracking import process
+     * @throws PilosaException if the import cannot be completed
+     */
+    @SuppressWarnings("WeakerAccess")
+    public void importIndex(Index index, List<Field> fields, WideRecordIterator iterator, ImportOptions options,
+                            final BlockingQueue<ImportStatusUpdate> statusQueue) {
+        if (fields.isEmpty()) {
+            throw new PilosaException("At least one field is required");
+        }
+        for (Field field : fields) {
+            if (!field.getIndex().getName().equals(index.getName())) {
+                throw new PilosaException(String.format("Field %s is not in index %s", field.getName(), index.getName()));
+            }
+        }
+        Span span = this.tracer.buildSpan("Client.ImportIndex").start();
+        try {
+            BitImportManager manager = new BitImportManager(options);
+            manager.run(this, fields, iterator, statusQueue);
+        } finally {
+            span.finish();
+        }
+    }
+
     /**
      * Returns the schema info.
      *
@@ -439,9 +646,12 @@ public class PilosaClient implements AutoCloseable {
             for (Map.Entry<String, Index> indexEntry : diffSchema.getIndexes().entrySet()) {
                 Index index = indexEntry.getValue();
                 if (!serverSchema.getIndexes().containsKey(indexEntry.getKey())) {
+                    // the index may have been deleted by another client, cached keys are stale
+                    dropKeyCaches(index.getName(), null);
                     ensureIndex(index);
                 }
                 for (Map.Entry<String, Field> fieldEntry : index.getFields().entrySet()) {
+                    dropKeyCaches(index.getName(), fieldEntry.getKey());
                     this.ensureField(fieldEntry.getValue());
                 }
             }
@@ -477,14 +687,7 @@ public class PilosaClient implements AutoCloseable {
      * @return ids associated with the provided row keys
      */
     public long[] translateRowKeys(Field field, String[] keys) throws IOException {
-        Internal.TranslateKeysRequest.Builder requestBuilder = Internal.TranslateKeysRequest.newBuilder()
-                .setIndex(field.getIndex().getName())
-                .setField(field.getName());
-        int i = 0;
-        for (String key : keys) {
-            requestBuilder.addKeys(key);
-        }
-        return this.translateKeys(requestBuilder.build());
+        return translateRowKeys(field, keys, keys.length);
     }
 
     /**
@@ -495,39 +698,199 @@ public class PilosaClient implements AutoCloseable {
      * @return ids associated with the provided column keys
      */
     public long[] translateColumnKeys(Index index, String[] keys) throws IOException {
+        return translateColumnKeys(index, keys, keys.length);
+    }
+
+    /**
+     * Returns the statistics of the column key cache of the given index.
+     *
+     * @param index index containing the column id space
+     * @return cache statistics
+     */
+    public KeyCacheStatistics getColumnKeyCacheStatistics(Index index) {
+        KeyCache cache = keyCache(index, null);
+        return (cache != null) ? cache.getStatistics() : new KeyCacheStatistics(0, 0, 0, 0);
+    }
+
+    /**
+     * Returns the statistics of the row key cache of the given field.
+     *
+     * @param field field containing the rows
+     * @return cache statistics
+     */
+    public KeyCacheStatistics getRowKeyCacheStatistics(Field field) {
+        KeyCache cache = keyCache(field.getIndex(), field);
+        return (cache != null) ? cache.getStatistics() : new KeyCacheStatistics(0, 0, 0, 0);
+    }
+
+    /**
+     * Translates the row keys of a batch to IDs, sending each distinct key only once.
+     *
+     * @param field field containing the rows
+     * @param keys  row keys, may contain duplicates
+     * @param size  number of keys to translate
+     * @return IDs in the same order with the keys
+     */
+    long[] translateRowKeys(Field field, String[] keys, int size) {
+        return translateBatchKeys(field.getIndex(), field, keys, size);
+    }
+
+    /**
+     * Translates the column keys of a batch to IDs, sending each distinct key only once.
+     *
+     * @param index index containing the column id space
+     * @param keys  column keys, may contain duplicates
+     * @param size  number of keys to translate
+     * @return IDs in the same order with the keys
+     */
+    long[] translateColumnKeys(Index index, String[] keys, int size) {
+        return translateBatchKeys(index, null, keys, size);
+    }
 
+    private long[] translateBatchKeys(Index index, Field field, String[] keys, int size) {
+        long[] result = new long[size];
+        boolean[] found = new boolean[size];
+        KeyCache cache = keyCache(index, field);
+        if (cache != null && cache.lookup(keys, size, result, found) == size) {
+            return result;
+        }
+        Map<String, Integer> positions = new HashMap<>();
+        List<String> distinctKeys = new ArrayList<>();
+        int[] keyPositions = new int[size];
+        for (int i = 0; i < size; i++) {
+            if (found[i]) {
+                continue;
+            }
+            Integer position = positions.get(keys[i]);
+            if (position == null) {
+                position = distinctKeys.size();
+                positions.put(keys[i], position);
+                distinctKeys.add(keys[i]);
+            }
+            keyPositions[i] = position;
+        }
         Internal.TranslateKeysRequest.Builder requestBuilder = Internal.TranslateKeysRequest.newBuilder()
-                .setIndex(index.getName());
+                .setIndex(index.getName())
+                .addAllKeys(distinctKeys);
+        if (field != null) {
+            requestBuilder.setField(field.getName());
+        }
+        long[] ids;
+        try {
+            ids = translateKeys(requestBuilder.build());
+        } catch (IOException ex) {
+            throw new PilosaException("Error while translating keys", ex);
+        }
+        if (ids.length != distinctKeys.size()) {
+            throw new PilosaException(String.format("Expected %d translated keys, got %d",
+                    distinctKeys.size(), ids.length));
+        }
+        if (cache != null) {
+            cache.put(distinctKeys.toArray(new String[0]), ids, ids.length);
+        }
+        for (int i = 0; i < size; i++) {
+            if (!found[i]) {
+                result[i] = ids[keyPositions[i]];
+            }
+        }
+        return result;
+    }
+
+    private KeyCache keyCache(Index index, Field field) {
+        int capacity = this.options.getKeyCacheSize();
+        if (capacity <= 0) {
+            return null;
+        }
+        String name = keyCacheName(index.getName(), (field == null) ? null : field.getName());
+        synchronized (this.keyCaches) {
+            KeyCache cache = this.keyCaches.get(name);
+            if (cache == null) {
+                cache = new KeyCache(capacity);
+                this.keyCaches.put(name, cache);
+            }
+            return cache;
+        }
+    }
 
-        for (String key : keys) {
-            requestBuilder.addKeys(key);
+    /**
+     * Drops the cached keys of the given field, or of the given index and all of its fields if the field is null.
+     */
+    void dropKeyCaches(String indexName, String fieldName) {
+        synchronized (this.keyCaches) {
+            if (fieldName != null) {
+                this.keyCaches.remove(keyCacheName(indexName, fieldName));
+                return;
+            }
+            String fieldPrefix = indexName + "/";
+            Iterator<String> names = this.keyCaches.keySet().iterator();
+            while (names.hasNext()) {
+                String name = names.next();
+                if (name.equals(indexName) || name.startsWith(fieldPrefix)) {
+                    names.remove();
+                }
+            }
         }
-        return this.translateKeys(requestBuilder.build());
+    }
+
+    private static String keyCacheName(String indexName, String fieldName) {
+        // row keys are per field, column keys are per index
+        return (fieldName == null) ? indexName : String.format("%s/%s", indexName, fieldName);
     }
 
     //protected long[] translateKeys(Internal.TranslateKeysRequest request) throws IOException {
     public long[] translateKeys(Internal.TranslateKeysRequest request) throws IOException {
         String path = "/internal/translate/keys";
         ByteArrayEntity body = new ByteArrayEntity(request.toByteArray());
-        CloseableHttpResponse response = clientExecute("POST", path, body, protobufHeaders, "Error while posting translateKey",
-                ReturnClientResponse.RAW_RESPONSE, false);
-        HttpEntity entity = response.getEntity();
-        if (entity != null) {
-            InputStream src = entity.getContent();
-            Internal.TranslateKeysResponse translateKeysResponse = Internal.TranslateKeysResponse.parseFrom(src);
-            List<Long> values = translateKeysResponse.getIDsList();
-            long[] result = new long[values.size()];
-            int i = 0;
-            for (Long v : values) {
-                result[i++] = v.longValue();
+        // the response is error checked, so IDs are never read from an error message.
+        // only the coordinator creates new keys, so the keys are sent to it as keyed imports are.
+        try (CloseableHttpResponse response = clientExecute("POST", path, body, protobufHeaders,
+                "Error while posting translateKey", ReturnClientResponse.ERROR_CHECKED_RESPONSE, true)) {
+            HttpEntity entity = response.getEntity();
+            if (entity != null) {
+                try (InputStream src = entity.getContent()) {
+                    return readTranslateKeysResponse(src, request.getKeysCount());
+                }
             }
-
-            return result;
-
         }
         throw new PilosaException("Server returned empty response");
     }
 
+    /**
+     * Reads the IDs from a TranslateKeysResponse message without boxing them.
+     */
+    static long[] readTranslateKeysResponse(InputStream src, int expectedCount) throws IOException {
+        CodedInputStream in = CodedInputStream.newInstance(src);
+        long[] ids = new long[Math.max(expectedCount, 1)];
+        int count = 0;
+        while (true) {
+            int tag = in.readTag();
+            if (tag == 0) {
+                break;
+            }
+            if (WireFormat.getTagFieldNumber(tag) != Internal.TranslateKeysResponse.IDS_FIELD_NUMBER) {
+                in.skipField(tag);
+                continue;
+            }
+            if (WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                // packed
+                int limit = in.pushLimit(in.readRawVarint32());
+                while (in.getBytesUntilLimit() > 0) {
+                    if (count == ids.length) {
+                        ids = Arrays.copyOf(ids, count * 2);
+                    }
+                    ids[count++] = in.readUInt64();
+                }
+                in.popLimit(limit);
+            } else {
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                }
+                ids[count++] = in.readUInt64();
+            }
+        }
+        return (count == ids.length) ? ids : Arrays.copyOf(ids, count);
+    }
+
 
     /**
      * Sends an HTTP request to the Pilosa server.
@@ -681,10 +1044,10 @@ public class PilosaClient implements AutoCloseable {
                         }
                         String responseError = readStream(src);
                         // couldn't find the exact exception, just throw a generic one
-                        throw new PilosaException(String.format("Server error (%d): %s", statusCode, responseError));
+                        throw new HttpError(statusCode, String.format("Server error (%d): %s", statusCode, responseError));
                     }
                 }
-                throw new PilosaException(String.format("Server error (%d): empty response", statusCode));
+                throw new HttpError(statusCode, String.format("Server error (%d): empty response", statusCode));
             }
             // the entity should be consumed, if not returned
             if (returnResponse == ReturnClientResponse.NO_RESPONSE) {
@@ -700,7 +1063,7 @@ public class PilosaClient implements AutoCloseable {
 
     HttpRequestBase makeRequest(final String method,
                                 final String path,
-                                final ByteArrayEntity data,
+                                final HttpEntity data,
                                 final Header[] headers,
                                 boolean useCoordinator) {
         String uri;
@@ -720,7 +1083,7 @@ public class PilosaClient implements AutoCloseable {
 
     HttpRequestBase makeRequest(final String method,
                                 final String path,
-                                final ByteArrayEntity data,
+                                final HttpEntity data,
                                 final Header[] headers,
                                 String hostUri) {
         HttpRequestBase request;
@@ -748,7 +1111,15 @@ public class PilosaClient implements AutoCloseable {
     private QueryResponse queryPath(QueryRequest request) {
         String path = String.format("/index/%s/query", request.getIndex().getName());
         Internal.QueryRequest qr = request.toProtobuf();
-        ByteArrayEntity body = new ByteArrayEntity(qr.toByteArray());
+        byte[] payload = qr.toByteArray();
+        ContentCodec codec = this.options.getRequestCodec();
+        ByteArrayEntity body;
+        if (codec != null && payload.length >= Util.MIN_ENCODED_CONTENT_LENGTH) {
+            body = new ByteArrayEntity(Util.encode(codec, payload));
+            body.setContentEncoding(codec.getContentEncoding());
+        } else {
+            body = new ByteArrayEntity(payload);
+        }
         try {
             CloseableHttpResponse response = clientExecute("POST", path, body, protobufHeaders, "Error while posting query",
                     ReturnClientResponse.RAW_RESPONSE, request.isUseCoordinator());
@@ -768,38 +1139,51 @@ public class PilosaClient implements AutoCloseable {
         }
     }
 
-    void importColumns(ShardRecords records) {
-        String indexName = records.getIndexName();
-        List<IFragmentNode> nodes;
-        ImportRequest importRequest = records.toImportRequest();
+    /**
+     * Returns the addresses of the nodes which should receive the given records.
+     */
+    List<String> importHosts(ShardRecords records) {
+        return importHosts(records.getIndexName(), records.getShard(), records.isIndexKeys() || records.isFieldKeys());
+    }
+
+    /**
+     * Returns the addresses of the nodes which should receive the given records, bypassing the cache.
+     */
+    List<String> refreshImportHosts(String indexName, long shard, boolean keys) {
+        this.fragmentNodeCache.remove(fragmentNodeCacheKey(indexName, shard));
+        return importHosts(indexName, shard, keys);
+    }
+
+    /**
+     * Returns the hosts of a shard of an index without column keys.
+     */
+    List<String> importHosts(String indexName, long shard) {
+        return importHosts(indexName, shard, false);
+    }
+
+    private List<String> importHosts(String indexName, long shard, boolean keys) {
         if (this.options.isManualServerAddress()) {
-            importNode(this.manualServerAddress, importRequest);
+            return Collections.singletonList(this.manualServerAddress);
+        }
+        List<IFragmentNode> nodes;
+        if (keys) {
+            nodes = Collections.singletonList(fetchCoordinatorNode());
         } else {
-            if (records.isIndexKeys() || records.isFieldKeys()) {
-                nodes = new ArrayList<>();
-                IFragmentNode node = fetchCoordinatorNode();
-                nodes.add(node);
-            } else {
-                nodes = fetchFragmentNodes(indexName, records.getShard());
-            }
-            for (IFragmentNode node : nodes) {
-                importNode(node.toURI().getNormalized(), importRequest);
-            }
+            nodes = fetchFragmentNodes(indexName, shard);
+        }
+        List<String> hosts = new ArrayList<>(nodes.size());
+        for (IFragmentNode node : nodes) {
+            hosts.add(node.toURI().getNormalized());
         }
+        return hosts;
     }
 
     List<IFragmentNode> fetchFragmentNodes(String indexName, long shard) {
-        String key = String.format("%s%d", indexName, shard);
-        List<IFragmentNode> nodes;
-
-        if (this.fragmentNodeCache == null) {
-            this.fragmentNodeCache = new HashMap<>();
-        } else {
-            // Try to load from the cache first
-            nodes = this.fragmentNodeCache.get(key);
-            if (nodes != null) {
-                return nodes;
-            }
+        String key = fragmentNodeCacheKey(indexName, shard);
+        // Try to load from the cache first
+        List<IFragmentNode> nodes = this.fragmentNodeCache.get(key);
+        if (nodes != null) {
+            return nodes;
         }
 
         String path = String.format("/internal/fragment/nodes?index=%s&shard=%d", indexName, shard);
@@ -822,6 +1206,10 @@ public class PilosaClient implements AutoCloseable {
         }
     }
 
+    private static String fragmentNodeCacheKey(String indexName, long shard) {
+        return String.format("%s%d", indexName, shard);
+    }
+
     IFragmentNode fetchCoordinatorNode() {
         try {
             CloseableHttpResponse response = clientExecute("GET", "/status", null, null,
@@ -852,15 +1240,31 @@ public class PilosaClient implements AutoCloseable {
     }
 
     void importNode(String hostUri, ImportRequest request) {
-        ByteArrayEntity entity = new ByteArrayEntity(request.getPayload());
+        HttpEntity entity = request.toHttpEntity();
         HttpRequestBase httpRequest = makeRequest("POST", request.getPath(), entity, request.getHeaders(), hostUri);
         try {
             clientExecute(httpRequest, "Error while importing", ReturnClientResponse.ERROR_CHECKED_RESPONSE);
         } catch (IOException e) {
-            throw new PilosaException(String.format("Error connecting to host: %s", hostUri));
+            throw new PilosaException(String.format("Error connecting to host: %s", hostUri), e);
         }
     }
 
+    ClientOptions getOptions() {
+        return this.options;
+    }
+
+    /**
+     * Returns the engine which runs the imports of this client; concurrent imports share its threads and
+     * request budget.
+     */
+    synchronized ImportEngine importEngine() {
+        if (this.importEngine == null) {
+            this.importEngine = new ImportEngine(this.options.getConnectionPoolTotalSize(),
+                    this.options.getImportThreadCount());
+        }
+        return this.importEngine;
+    }
+
     private String readStream(InputStream stream) throws IOException {
         ByteArrayOutputStream result = new ByteArrayOutputStream();
         byte[] buffer = new byte[1024];
@@ -910,6 +1314,7 @@ public class PilosaClient implements AutoCloseable {
     private static final String HTTP = "http";
     private static final String HTTPS = "https";
     private static final int MAX_HOSTS = 10;
+    private static final int MAX_KEY_CACHES = 64;
     private static final Header[] protobufHeaders;
     private static final Logger logger = LoggerFactory.getLogger("pilosa");
     private static List<String> systemFields;
@@ -917,12 +1322,20 @@ public class PilosaClient implements AutoCloseable {
     private URI currentAddress;
     private CloseableHttpClient client = null;
     private ClientOptions options;
-    private Map<String, List<IFragmentNode>> fragmentNodeCache = null;
+    private final Map<String, List<IFragmentNode>> fragmentNodeCache = new ConcurrentHashMap<>();
+    // the least recently used caches are dropped once there are more than MAX_KEY_CACHES
+    private final Map<String, KeyCache> keyCaches = new LinkedHashMap<String, KeyCache>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, KeyCache> eldest) {
+            return size() > MAX_KEY_CACHES;
+        }
+    };
     private URI coordinatorAddress = null;
     private IFragmentNode coordinatorNode = null;
     private IFragmentNode fragmentNode = null;
     private String manualServerAddress;
     private Tracer tracer = null;
+    private ImportEngine importEngine = null;
 }
 
 class QueryRequest {
@@ -1036,132 +1449,653 @@ class FragmentNodeURI {
 
 class BitImportManager {
     public void run(final PilosaClient client, final Field field, final RecordIterator iterator, final BlockingQueue<ImportStatusUpdate> statusQueue) {
-        final long shardWidth = this.options.getShardWidth();
-        final int threadCount = this.options.getThreadCount();
+        run(client, Collections.singletonList(field), iterator, statusQueue);
+    }
+
+    /**
+     * Imports records into one or more fields of an index.
+     * <p>
+     * With more than one field, the records must be {@link WideRecord}s with a value for each field position.
+     * Each record is read and routed once, and its values are added to the batches of their fields.
+     */
+    public void run(final PilosaClient client, final List<Field> fields, final Iterator<? extends Record> iterator,
+                    final BlockingQueue<ImportStatusUpdate> statusQueue) {
+        run(client, fields, iterator, statusQueue, null);
+    }
+
+    /**
+     * Imports records, checking the given handle for cancellation and flush requests before reading each record.
+     */
+    void run(final PilosaClient client, final List<Field> fields, final Iterator<? extends Record> iterator,
+             final BlockingQueue<ImportStatusUpdate> statusQueue, final ImportHandle handle) {
+        run(client, fields, Collections.singletonList(iterator), statusQueue, handle);
+    }
+
+    /**
+     * Imports records read from several iterators concurrently.
+     * <p>
+     * Each iterator is read by its own producer thread, which routes its records to the import workers.
+     */
+    void run(final PilosaClient client, final List<Field> fields,
+             final List<? extends Iterator<? extends Record>> iterators,
+             final BlockingQueue<ImportStatusUpdate> statusQueue, final ImportHandle handle) {
+        if (iterators.isEmpty()) {
+            throw new PilosaException("At least one iterator is required");
+        }
+        runSources(client, fields, iterators, statusQueue, handle);
+    }
+
+    /**
+     * Imports records with IDs read from a cursor, without creating an object for each record.
+     */
+    void run(final PilosaClient client, final Field field, final RecordCursor cursor,
+             final BlockingQueue<ImportStatusUpdate> statusQueue, final ImportHandle handle) {
+        if (field.getIndex().getOptions().isKeys() || field.getOptions().isKeys()) {
+            throw new PilosaException("Record cursors are not supported for fields or indexes with keys");
+        }
+        runSources(client, Collections.singletonList(field), Collections.singletonList(cursor), statusQueue, handle);
+    }
+
+    /**
+     * Imports records from the given sources, each of which is either an iterator of records or a {@link RecordCursor}.
+     */
+    private void runSources(final PilosaClient client, final List<Field> fields, final List<?> sources,
+                            final BlockingQueue<ImportStatusUpdate> statusQueue, final ImportHandle handle) {
+        if (sources.size() > 1 && this.options.isSorted()) {
+            throw new PilosaException("Sorted imports are supported for a single iterator");
+        }
+        if (this.options.getCheckpointStore() != null
+                && (sources.size() > 1 || this.options.getSpillDirectory() != null)) {
+            throw new PilosaException("Checkpoints are supported for a single iterator without spilling");
+        }
+        ImportMetricsCollector metrics = (handle != null) ? handle.getCollector() : new ImportMetricsCollector();
+        ImportMetricsListener listener = this.options.getMetricsListener();
+        if (listener != null) {
+            metrics.startReporting(client.importEngine().reporter(), listener, this.options.getMetricsIntervalMs());
+        }
+        try {
+            if (this.options.getSpillDirectory() != null) {
+                if (fields.size() != 1 || sources.size() != 1) {
+                    throw new PilosaException("Spilling imports are supported for a single field and iterator");
+                }
+                new SpillImport(client, fields.get(0), this.options, statusQueue, metrics).run(cursor(sources.get(0)), handle);
+            } else {
+                importRecords(client, fields, sources, statusQueue, metrics, handle);
+            }
+        } finally {
+            metrics.stopReporting();
+        }
+    }
+
+    private void importRecords(final PilosaClient client, final List<Field> fields, final List<?> sources,
+                               final BlockingQueue<ImportStatusUpdate> statusQueue,
+                               final ImportMetricsCollector metrics,
+                               final ImportHandle handle) {
+        ImportEngine engine = client.importEngine();
+        int threadCount;
+        try {
+            // fewer import threads than asked for if other imports of the client use them
+            threadCount = engine.acquireWorkers(this.options.getThreadCount());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PilosaException("Interrupted while waiting for an import thread", e);
+        }
+        try {
+            importRecords(client, fields, sources, statusQueue, metrics, handle, threadCount);
+        } finally {
+            engine.releaseWorkers(threadCount);
+        }
+    }
+
+    private void importRecords(final PilosaClient client, final List<Field> fields, final List<?> sources,
+                               final BlockingQueue<ImportStatusUpdate> statusQueue,
+                               final ImportMetricsCollector metrics,
+                               final ImportHandle handle, final int threadCount) {
         final int batchSize = this.options.getBatchSize();
-        List<BlockingQueue<Record>> queues = new ArrayList<>(threadCount);
+        List<RecordChunkQueue> queues = new ArrayList<>(threadCount);
         List<Future> workers = new ArrayList<>(threadCount);
 
-        ExecutorService service = Executors.newFixedThreadPool(threadCount);
+        AdaptiveBatchSize adaptiveBatchSize = null;
+        if (this.options.getTargetLatencyMs() > 0) {
+            adaptiveBatchSize = new AdaptiveBatchSize(this.options);
+        }
+        ImportMemoryBudget budget = null;
+        if (this.options.getMemoryBudget() > 0) {
+            budget = new ImportMemoryBudget(this.options.getMemoryBudget());
+        }
+        ImportSender sender = new ImportSender(client, this.options, statusQueue, adaptiveBatchSize, metrics);
+        ImportTasks tasks = client.importEngine().tasks();
         for (int i = 0; i < threadCount; i++) {
-            BlockingQueue<Record> q = new LinkedBlockingDeque<>(batchSize);
+            RecordChunkQueue q = new RecordChunkQueue(RecordChunkQueue.DEFAULT_CHUNK_SIZE, batchSize);
             queues.add(q);
-            Runnable worker = new BitImportWorker(client, field, q, statusQueue, this.options);
-            workers.add(service.submit(worker));
+            Runnable worker = new BitImportWorker(client, fields, q, sender, adaptiveBatchSize, budget, metrics,
+                    this.options);
+            workers.add(tasks.submit(worker));
         }
+        metrics.setQueues(queues);
 
+        ShardRouter router = null;
         try {
-            // Push columns from the iterator
-            while (iterator.hasNext()) {
-                Record record = iterator.next();
-                long shard = record.shard(shardWidth);
-                queues.get((int) (shard % threadCount)).put(record);
+            final boolean indexKeys = fields.get(0).getIndex().getOptions().isKeys();
+            final boolean values = fields.get(0).getOptions().getFieldType() == FieldType.INT;
+            ImportCheckpointer checkpointer = null;
+            if (this.options.getCheckpointStore() != null) {
+                checkpointer = new ImportCheckpointer(this.options.getCheckpointStore(),
+                        this.options.getCheckpointInterval(), this.options.isResume());
+            }
+            if (this.options.isNodeScheduling() && !indexKeys) {
+                router = new ShardRouter(client, fields.get(0), tasks, threadCount);
+            }
+            if (sources.size() == 1) {
+                produce(sources.get(0), writers(queues), budget, handle, checkpointer, router, indexKeys, values);
+            } else {
+                produceConcurrently(client, sources, queues, budget, router, indexKeys, values);
             }
 
             // Signal the threads to stop
-            for (BlockingQueue<Record> q : queues) {
-                q.put(Column.DEFAULT);
+            for (RecordChunkQueue q : queues) {
+                q.close();
             }
 
-            // Prepare to terminate the executor
-            service.shutdown();
-
             for (Future worker : workers) {
                 worker.get();
             }
-        } catch (InterruptedException e) {
-            for (Future worker : workers) {
-                worker.cancel(true);
+
+            // Wait for the requests in flight
+            sender.close();
+            if (checkpointer != null) {
+                checkpointer.completed();
             }
+        } catch (InterruptedException e) {
+            tasks.cancel();
+            sender.abort();
         } catch (ExecutionException e) {
+            tasks.cancel();
+            sender.abort();
             throw new PilosaException("Error in import worker", e);
+        } catch (RuntimeException e) {
+            // reading the records failed
+            tasks.cancel();
+            sender.abort();
+            throw e;
+        } finally {
+            if (router != null) {
+                router.close();
+            }
         }
+    }
 
+    /**
+     * Reads the records of an iterator or a cursor and routes them to the import workers through the given writers,
+     * one for each worker.
+     *
+     * @param checkpointer saves the checkpoints of the import, or null
+     * @param values       true if the records of a cursor are field values
+     */
+    @SuppressWarnings("unchecked")
+    private void produce(final Object source, final List<RecordChunkQueue.Writer> writers,
+                         final ImportMemoryBudget budget, final ImportHandle handle,
+                         final ImportCheckpointer checkpointer, final ShardRouter router,
+                         final boolean indexKeys, final boolean values)
+            throws InterruptedException {
+        final RecordCursor cursor = (source instanceof RecordCursor) ? (RecordCursor) source : null;
+        final Iterator<? extends Record> iterator = (cursor == null) ? (Iterator<? extends Record>) source : null;
+        final long shardWidth = this.options.getShardWidth();
+        final int threadCount = writers.size();
+        final boolean timeoutStrategy = this.options.getStrategy() == ImportOptions.Strategy.TIMEOUT;
+        final long timeout = this.options.getTimeoutMs();
+        if (checkpointer != null && checkpointer.getResumePosition() > 0) {
+            // the records before the checkpoint are already imported
+            logger.info("Resuming the import after {} records", checkpointer.getResumePosition());
+            for (long i = checkpointer.getResumePosition(); i > 0; i--) {
+                if (cursor != null) {
+                    if (!cursor.advance()) {
+                        break;
+                    }
+                } else {
+                    if (!iterator.hasNext()) {
+                        break;
+                    }
+                    iterator.next();
+                }
+            }
+        }
+        // the worker of the last shard, records of a shard usually come together
+        long lastShard = -1;
+        int lastWorker = 0;
+        long tic = System.currentTimeMillis();
+        boolean running = true;
+        while (running) {
+            if (handle != null) {
+                if (handle.isCancelRequested()) {
+                    break;
+                }
+                CountDownLatch flush;
+                while (running && (flush = handle.pollFlushRequest()) != null) {
+                    // the handle counts on the import threads asked for, the import may have fewer
+                    for (long extra = flush.getCount() - writers.size(); extra > 0; extra--) {
+                        flush.countDown();
+                    }
+                    for (RecordChunkQueue.Writer w : writers) {
+                        running &= w.passFlush(flush);
+                    }
+                }
+            }
+            if (cursor != null) {
+                if (!cursor.advance()) {
+                    break;
+                }
+                long columnID = cursor.columnID();
+                long shard = columnID / shardWidth;
+                if (shard != lastShard) {
+                    lastWorker = (router != null) ? router.workerIndex(shard) : (int) (shard % threadCount);
+                    lastShard = shard;
+                }
+                RecordChunkQueue.Writer writer = writers.get(lastWorker);
+                running = values ? writer.put(columnID, cursor.value(), 0) :
+                        writer.put(columnID, cursor.rowID(), cursor.timestamp());
+            } else {
+                if (!iterator.hasNext()) {
+                    break;
+                }
+                Record record = iterator.next();
+                int worker;
+                if (router != null) {
+                    long shard = record.shard(shardWidth);
+                    if (shard != lastShard) {
+                        lastWorker = router.workerIndex(shard);
+                        lastShard = shard;
+                    }
+                    worker = lastWorker;
+                } else {
+                    worker = workerIndex(record, shardWidth, threadCount, indexKeys);
+                }
+                running = writers.get(worker).put(record);
+            }
+            if (checkpointer != null) {
+                running &= checkpointer.recordRead(writers);
+            }
+            // Partially filled chunks shouldn't hold records back longer than the import timeout
+            if (timeoutStrategy && (System.currentTimeMillis() - tic) > timeout) {
+                for (RecordChunkQueue.Writer w : writers) {
+                    running &= w.flush();
+                }
+                tic = System.currentTimeMillis();
+            }
+            if (budget != null && budget.isExceeded()) {
+                // pass the partial chunks, so the workers can import them to make room
+                for (RecordChunkQueue.Writer w : writers) {
+                    running &= w.flush();
+                }
+                budget.await();
+            }
+        }
+        for (RecordChunkQueue.Writer w : writers) {
+            w.flush();
+        }
+    }
+
+    /**
+     * Reads the sources on a producer thread each, and waits until all of them are read.
+     * <p>
+     * Each producer fills its own chunks, so the producers only contend when they pass full chunks to a worker.
+     */
+    private void produceConcurrently(final PilosaClient client, final List<?> sources, final List<RecordChunkQueue> queues,
+                                     final ImportMemoryBudget budget, final ShardRouter router,
+                                     final boolean indexKeys, final boolean values)
+            throws InterruptedException {
+        ImportTasks producers = client.importEngine().tasks();
+        List<Future> futures = new ArrayList<>(sources.size());
+        for (final Object source : sources) {
+            final List<RecordChunkQueue.Writer> writers = writers(queues);
+            futures.add(producers.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    produce(source, writers, budget, null, null, router, indexKeys, values);
+                    return null;
+                }
+            }));
+        }
+        try {
+            for (Future future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            producers.cancel();
+            throw e;
+        } catch (ExecutionException e) {
+            producers.cancel();
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new PilosaException("Error in import producer", cause);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RecordCursor cursor(Object source) {
+        if (source instanceof RecordCursor) {
+            return (RecordCursor) source;
+        }
+        return new RecordIteratorCursor((Iterator<? extends Record>) source);
+    }
+
+    private static List<RecordChunkQueue.Writer> writers(List<RecordChunkQueue> queues) {
+        List<RecordChunkQueue.Writer> writers = new ArrayList<>(queues.size());
+        for (RecordChunkQueue q : queues) {
+            writers.add(q.writer());
+        }
+        return writers;
+    }
+
+    /**
+     * Returns the worker which imports the given record.
+     * <p>
+     * Records with column IDs are assigned by shard. Records with column keys don't have a shard yet,
+     * so they are assigned by the hash of the key. Records of the same column always go to the same
+     * worker, which keeps their order.
+     */
+    static int workerIndex(Record record, long shardWidth, int threadCount, boolean indexKeys) {
+        if (indexKeys) {
+            String columnKey = columnKey(record);
+            if (columnKey != null) {
+                int h = columnKey.hashCode();
+                h ^= (h >>> 16);
+                return (h & Integer.MAX_VALUE) % threadCount;
+            }
+        }
+        long shard = record.shard(shardWidth);
+        return (int) (shard % threadCount);
+    }
+
+    private static String columnKey(Record record) {
+        if (record instanceof Column) {
+            return ((Column) record).columnKey;
+        }
+        if (record instanceof FieldValue) {
+            return ((FieldValue) record).columnKey;
+        }
+        if (record instanceof WideRecord) {
+            return ((WideRecord) record).columnKey;
+        }
+        return null;
     }
 
     BitImportManager(ImportOptions importOptions) {
         this.options = importOptions;
     }
 
+    private static final Logger logger = LoggerFactory.getLogger("pilosa");
     private final ImportOptions options;
 }
 
 class BitImportWorker implements Runnable {
     BitImportWorker(final PilosaClient client,
-                    final Field field,
-                    final BlockingQueue<Record> queue,
-                    final BlockingQueue<ImportStatusUpdate> statusQueue,
+                    final List<Field> fields,
+                    final RecordChunkQueue queue,
+                    final ImportSender sender,
+                    final AdaptiveBatchSize adaptiveBatchSize,
+                    final ImportMemoryBudget budget,
+                    final ImportMetricsCollector metrics,
                     final ImportOptions options) {
         this.client = client;
-        this.field = field;
+        this.fields = fields;
         this.queue = queue;
-        this.statusQueue = statusQueue;
+        this.sender = sender;
+        this.adaptiveBatchSize = adaptiveBatchSize;
+        this.budget = budget;
+        this.metrics = metrics;
+        ContentCodec codec = options.getRequestCodec();
+        this.codec = (codec != null) ? codec : client.getOptions().getRequestCodec();
         this.options = options;
+        this.sorted = options.isSorted();
+        this.nodeScheduling = options.isNodeScheduling();
+        this.inFlight = new ArrayList<>(fields.size());
+        for (int i = 0; i < fields.size(); i++) {
+            this.inFlight.add(new HashMap<Long, ImportSender.Batch>());
+        }
     }
 
     @Override
     public void run() {
+        try {
+            importChunks();
+        } finally {
+            if (this.budget != null) {
+                // the buffers are either imported or dropped
+                this.budget.add(-this.accountedBytes);
+            }
+        }
+    }
+
+    private void importChunks() {
         final long shardWidth = this.options.getShardWidth();
-        final ImportOptions.Strategy strategy = this.options.getStrategy();
-        final long timeout = this.options.getTimeoutMs();
-        int batchCountDown = this.options.getBatchSize();
-        long tic = System.currentTimeMillis();
+        this.batchCountDown = batchSize();
+        this.tic = System.currentTimeMillis();
 
-        while (!Thread.currentThread().isInterrupted()) {
-            try {
-                Record record = this.queue.take();
-                if (record.isDefault()) {
-                    break;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Object chunk = nextChunk();
+                if (chunk == null) {
+                    // no records yet, other workers may be waiting for memory
+                    relieveMemoryPressure();
+                    continue;
                 }
-                long shard = record.shard(shardWidth);
-                ShardRecords shardRecords = shardGroup.get(shard);
-                if (shardRecords == null) {
-                    if (this.field.getOptions().getFieldType() == FieldType.INT) {
-                        shardRecords = ShardFieldValues.create(this.field, shard, this.options);
-                    } else {
-                        shardRecords = ShardColumns.create(this.field, shard, shardWidth, this.options);
-                    }
-                    shardGroup.put(shard, shardRecords);
+                if (chunk == RecordChunkQueue.FLUSH) {
+                    importAll();
+                    awaitInFlight();
+                    // a failed batch must not be confirmed by the flush
+                    this.sender.checkFailure();
+                    this.queue.flushed();
+                    continue;
                 }
-                shardRecords.add(record);
-                batchCountDown -= 1;
-                if (strategy.equals(ImportOptions.Strategy.BATCH) && batchCountDown == 0) {
-                    for (Map.Entry<Long, ShardRecords> entry : this.shardGroup.entrySet()) {
-                        shardRecords = entry.getValue();
-                        if (shardRecords.size() > 0) {
-                            importRecords(entry.getValue());
-                        }
+                if (chunk instanceof RecordBlock) {
+                    addBlock((RecordBlock) chunk, shardWidth);
+                } else {
+                    Record[] records = (Record[]) chunk;
+                    if (records.length == 0) {
+                        break;
                     }
-                    batchCountDown = this.options.getBatchSize();
-                    tic = System.currentTimeMillis();
-                } else if (strategy.equals(ImportOptions.Strategy.TIMEOUT) && (System.currentTimeMillis() - tic) > timeout) {
-                    importRecords(shardGroup.get(largestShard()));
-                    batchCountDown = this.options.getBatchSize();
-                    tic = System.currentTimeMillis();
+                    addRecords(records, shardWidth);
+                }
+                if (this.budget != null) {
+                    accountMemory();
+                    relieveMemoryPressure();
                 }
-            } catch (InterruptedException e) {
-                break;
             }
+        } catch (InterruptedException e) {
+            // stop reading records and import the ones already read
+        } finally {
+            this.queue.stop();
         }
         // The thread is shutting down, import remaining columns in the batch
-        for (Map.Entry<Long, ShardRecords> entry : this.shardGroup.entrySet()) {
-            ShardRecords records = entry.getValue();
-            if (records.size() > 0) {
-                try {
-                    importRecords(entry.getValue());
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
+        try {
+            importAll();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void addRecords(Record[] chunk, long shardWidth) throws InterruptedException {
+        this.metrics.addRead(chunk.length);
+        for (Record record : chunk) {
+            long shard = record.shard(shardWidth);
+            BufferedShardRecords[] shardRecords = shardRecords(shard, shardWidth, record instanceof WideRecord);
+            if (record instanceof WideRecord) {
+                // a wide record has values for several fields
+                WideRecord wideRecord = (WideRecord) record;
+                if (wideRecord.getFieldCount() != shardRecords.length) {
+                    throw new PilosaException(String.format("Expected a record with %d fields, got: %s",
+                            shardRecords.length, wideRecord));
                 }
+                for (int i = 0; i < shardRecords.length; i++) {
+                    if (wideRecord.hasValue(i)) {
+                        wideRecord.addTo(i, shardRecords[i]);
+                    }
+                }
+            } else {
+                shardRecords[0].add(record);
+            }
+            recordAdded();
+        }
+    }
+
+    /**
+     * Adds the records of a block to the shard buffers directly from its arrays.
+     */
+    private void addBlock(RecordBlock block, long shardWidth) throws InterruptedException {
+        final int size = block.size();
+        this.metrics.addRead(size);
+        for (int i = 0; i < size; i++) {
+            long columnID = block.columnIDs[i];
+            ShardRecords records = shardRecords(columnID / shardWidth, shardWidth, false)[0];
+            if (records instanceof ShardFieldValues) {
+                ((ShardFieldValues) records).add(columnID, block.rowIDs[i]);
+            } else {
+                ((ShardColumns) records).add(block.rowIDs[i], columnID, block.timestamps[i]);
+            }
+            recordAdded();
+        }
+    }
+
+    /**
+     * Imports the buffered records if the batch size is reached, or the import timeout passed.
+     */
+    private void recordAdded() throws InterruptedException {
+        this.batchCountDown -= 1;
+        ImportOptions.Strategy strategy = this.options.getStrategy();
+        if (strategy == ImportOptions.Strategy.BATCH && this.batchCountDown == 0) {
+            importAll();
+            this.batchCountDown = batchSize();
+            this.tic = System.currentTimeMillis();
+        } else if (strategy == ImportOptions.Strategy.TIMEOUT
+                && (System.currentTimeMillis() - this.tic) > this.options.getTimeoutMs()) {
+            importRecords(this.sorted ? this.currentGroup : this.shardGroup.get(largestShard()));
+            this.batchCountDown = batchSize();
+            this.tic = System.currentTimeMillis();
+        }
+    }
+
+    private void awaitInFlight() throws InterruptedException {
+        for (Map<Long, ImportSender.Batch> batches : this.inFlight) {
+            for (ImportSender.Batch batch : batches.values()) {
+                batch.await();
+            }
+        }
+    }
+
+    private Object nextChunk() throws InterruptedException {
+        if (this.budget == null) {
+            return this.queue.take();
+        }
+        return this.queue.poll(ImportMemoryBudget.CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Updates the memory budget with the memory held by the shard buffers of this worker.
+     */
+    private void accountMemory() {
+        long bytes = byteSize(this.currentGroup);
+        for (BufferedShardRecords[] group : this.shardGroup.values()) {
+            bytes += byteSize(group);
+        }
+        this.budget.add(bytes - this.accountedBytes);
+        this.accountedBytes = bytes;
+    }
+
+    /**
+     * Imports and drops the largest shard buffers while the memory budget is exceeded.
+     */
+    private void relieveMemoryPressure() throws InterruptedException {
+        if (this.budget == null) {
+            return;
+        }
+        while (this.budget.isExceeded() && (this.currentGroup != null || !this.shardGroup.isEmpty())) {
+            if (this.currentGroup != null) {
+                importRecords(this.currentGroup);
+                this.currentGroup = null;
+            } else {
+                importRecords(this.shardGroup.remove(largestBuffer()));
+            }
+            accountMemory();
+        }
+    }
+
+    private long largestBuffer() {
+        long largestSize = -1;
+        long largestShard = -1;
+        for (Map.Entry<Long, BufferedShardRecords[]> entry : this.shardGroup.entrySet()) {
+            long size = byteSize(entry.getValue());
+            if (size > largestSize) {
+                largestSize = size;
+                largestShard = entry.getKey();
             }
         }
+        return largestShard;
+    }
+
+    private static long byteSize(BufferedShardRecords[] group) {
+        long bytes = 0;
+        if (group != null) {
+            for (BufferedShardRecords records : group) {
+                bytes += records.byteSize();
+            }
+        }
+        return bytes;
+    }
+
+    private BufferedShardRecords[] shardRecords(long shard, long shardWidth, boolean wide) throws InterruptedException {
+        if (this.sorted) {
+            // sorted records don't return to a shard, import it as soon as the records move past it
+            if (this.currentGroup == null || this.currentShard != shard) {
+                importRecords(this.currentGroup);
+                this.currentGroup = createShardRecords(shard, shardWidth, wide);
+                this.currentShard = shard;
+            }
+            return this.currentGroup;
+        }
+        BufferedShardRecords[] shardRecords = this.shardGroup.get(shard);
+        if (shardRecords == null) {
+            shardRecords = createShardRecords(shard, shardWidth, wide);
+            this.shardGroup.put(shard, shardRecords);
+        }
+        return shardRecords;
+    }
+
+    private BufferedShardRecords[] createShardRecords(long shard, long shardWidth, boolean wide) {
+        BufferedShardRecords[] shardRecords = new BufferedShardRecords[this.fields.size()];
+        for (int i = 0; i < shardRecords.length; i++) {
+            Field field = this.fields.get(i);
+            if (field.getOptions().getFieldType() == FieldType.INT) {
+                shardRecords[i] = ShardFieldValues.create(field, shard, this.options);
+            } else {
+                // wide records are sorted by column only, the rows of a field are not sorted
+                shardRecords[i] = ShardColumns.create(field, shard, shardWidth, this.options, this.sorted && !wide);
+            }
+        }
+        return shardRecords;
+    }
+
+    private void importAll() throws InterruptedException {
+        importRecords(this.currentGroup);
+        for (BufferedShardRecords[] group : this.shardGroup.values()) {
+            importRecords(group);
+        }
+    }
+
+    private int batchSize() {
+        return (this.adaptiveBatchSize != null) ? this.adaptiveBatchSize.get() : this.options.getBatchSize();
     }
 
     private long largestShard() {
         long largestCount = 0;
         long largestShard = -1;
-        for (Map.Entry<Long, ShardRecords> entry : this.shardGroup.entrySet()) {
-            ShardRecords records = entry.getValue();
-            int shardBitCount = records.size();
+        for (Map.Entry<Long, BufferedShardRecords[]> entry : this.shardGroup.entrySet()) {
+            int shardBitCount = 0;
+            for (BufferedShardRecords records : entry.getValue()) {
+                shardBitCount += records.size();
+            }
             if (shardBitCount > largestCount) {
                 largestCount = shardBitCount;
                 largestShard = entry.getKey();
@@ -1170,24 +2104,70 @@ class BitImportWorker implements Runnable {
         return largestShard;
     }
 
-    private void importRecords(ShardRecords records) throws InterruptedException {
+    private void importRecords(BufferedShardRecords[] group) throws InterruptedException {
+        if (group == null) {
+            return;
+        }
+        for (int i = 0; i < group.length; i++) {
+            if (group[i].size() > 0) {
+                importRecords(group[i], this.inFlight.get(i));
+            }
+        }
+    }
+
+    private void importRecords(BufferedShardRecords records, Map<Long, ImportSender.Batch> inFlight) throws InterruptedException {
         long tic = System.currentTimeMillis();
-        this.client.importColumns(records);
-        if (this.statusQueue != null) {
-            long tac = System.currentTimeMillis();
-            ImportStatusUpdate statusUpdate = new ImportStatusUpdate(Thread.currentThread().getId(),
-                    records.getShard(), records.size(), tac - tic);
-            this.statusQueue.offer(statusUpdate, 1, TimeUnit.SECONDS);
+        List<ShardRecords> translated = records.translateKeys(this.client);
+        if (translated == null) {
+            sendRecords(records, inFlight, tic);
+        } else {
+            for (ShardRecords shardRecords : translated) {
+                sendRecords(shardRecords, inFlight, tic);
+            }
         }
         records.clear();
     }
 
+    private void sendRecords(ShardRecords records, Map<Long, ImportSender.Batch> inFlight, long tic)
+            throws InterruptedException {
+        long shard = records.getShard();
+        long encodeStart = System.nanoTime();
+        ImportRequest request = records.toImportRequest().encode(this.codec);
+        this.metrics.addEncodeTime(System.nanoTime() - encodeStart);
+        this.metrics.addShardRecords(shard, records.size());
+        List<String> hosts = this.client.importHosts(records);
+        // Requests for the same shard are sent in order, so later values of a column win.
+        // With node scheduling, the sender keeps the order without blocking the worker.
+        ImportSender.Batch previous = inFlight.get(shard);
+        if (previous != null && !this.nodeScheduling) {
+            previous.await();
+        }
+        ImportSender.Batch batch = this.sender.send(Thread.currentThread().getId(), records, tic, hosts, request);
+        inFlight.put(shard, batch);
+    }
+
     private final PilosaClient client;
-    private final Field field;
-    private final BlockingQueue<Record> queue;
-    private final BlockingQueue<ImportStatusUpdate> statusQueue;
+    private final List<Field> fields;
+    private final RecordChunkQueue queue;
+    private final ImportSender sender;
+    private final AdaptiveBatchSize adaptiveBatchSize;
+    private final ImportMemoryBudget budget;
+    private final ImportMetricsCollector metrics;
+    private final ContentCodec codec;
     private final ImportOptions options;
-    private Map<Long, ShardRecords> shardGroup = new HashMap<>();
+    private final boolean sorted;
+    private final boolean nodeScheduling;
+    private final Map<Long, BufferedShardRecords[]> shardGroup = new HashMap<>();
+    // the shard being read if the records are sorted
+    private long currentShard = -1;
+    private BufferedShardRecords[] currentGroup = null;
+    // memory of the shard buffers added to the memory budget
+    private long accountedBytes = 0;
+    // records left until the batch size is reached, and the time the last batch was imported
+    private int batchCountDown;
+    private long tic;
+    // the last batch sent for each shard, per field
+    private final List<Map<Long, ImportSender.Batch>> inFlight;
 }
 
 class NoopSpan implements Span {
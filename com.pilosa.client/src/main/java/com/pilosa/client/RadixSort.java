@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import java.util.Arrays;
+
+/**
+ * Sorts parallel primitive arrays without boxing.
+ * <p>
+ * Instead of moving the data, the sort produces the order in which the
+ * records should be visited. Bytes which are identical for all keys are skipped,
+ * so sorting IDs which live in a single shard takes only a few passes.
+ */
+final class RadixSort {
+    /**
+     * Returns the indexes of the first <code>size</code> keys in ascending order.
+     * <p>
+     * Records are ordered by <code>primary</code>, then by <code>secondary</code> if it is not null.
+     * The sort is stable and compares keys as signed longs.
+     *
+     * @param primary   primary sort keys
+     * @param secondary secondary sort keys, may be null
+     * @param size      number of keys to sort
+     * @param order     reused for the result if it is large enough, may be null
+     * @return sorted indexes
+     */
+    static int[] sort(long[] primary, long[] secondary, int size, int[] order) {
+        order = identity(size, order);
+        if (size < 2) {
+            return order;
+        }
+        int[] scratch = new int[size];
+        int[] counts = new int[RADIX];
+        int[] src = order;
+        int[] dst = scratch;
+        // least significant key first
+        long[][] keyArrays = (secondary == null) ? new long[][]{primary} : new long[][]{secondary, primary};
+        for (long[] keys : keyArrays) {
+            long changed = changedBits(keys, size);
+            for (int shift = 0; shift < Long.SIZE; shift += DIGIT_BITS) {
+                if (((changed >>> shift) & DIGIT_MASK) == 0) {
+                    continue;
+                }
+                pass(keys, shift, src, dst, size, counts);
+                int[] t = src;
+                src = dst;
+                dst = t;
+            }
+        }
+        if (src != order) {
+            System.arraycopy(src, 0, order, 0, size);
+        }
+        return order;
+    }
+
+    /**
+     * Returns the indexes of the first <code>size</code> keys in their current order.
+     * <p>
+     * Used instead of {@link #sort(long[], long[], int, int[])} when the keys are known to be sorted.
+     *
+     * @param size  number of keys
+     * @param order reused for the result if it is large enough, may be null
+     * @return indexes from 0 to <code>size - 1</code>
+     */
+    static int[] identity(int size, int[] order) {
+        if (order == null || order.length < size) {
+            order = new int[size];
+        }
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        return order;
+    }
+
+    private static long changedBits(long[] keys, int size) {
+        long first = keys[0];
+        long changed = 0;
+        for (int i = 1; i < size; i++) {
+            changed |= keys[i] ^ first;
+        }
+        return changed;
+    }
+
+    private static void pass(long[] keys, int shift, int[] src, int[] dst, int size, int[] counts) {
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < size; i++) {
+            counts[digit(keys[src[i]], shift)]++;
+        }
+        int total = 0;
+        for (int i = 0; i < RADIX; i++) {
+            int count = counts[i];
+            counts[i] = total;
+            total += count;
+        }
+        for (int i = 0; i < size; i++) {
+            int index = src[i];
+            dst[counts[digit(keys[index], shift)]++] = index;
+        }
+    }
+
+    private static int digit(long key, int shift) {
+        // flipping the sign bit makes the unsigned byte order match the signed order
+        return (int) (((key ^ Long.MIN_VALUE) >>> shift) & DIGIT_MASK);
+    }
+
+    private static final int DIGIT_BITS = 8;
+    private static final int RADIX = 1 << DIGIT_BITS;
+    private static final int DIGIT_MASK = RADIX - 1;
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+/**
+ * Holds a chunk of records read from a {@link RecordCursor} in primitive arrays.
+ * <p>
+ * A column is stored as its column ID, row ID and timestamp; a field value as its column ID and value.
+ */
+final class RecordBlock {
+    RecordBlock(int capacity) {
+        this.columnIDs = new long[capacity];
+        this.rowIDs = new long[capacity];
+        this.timestamps = new long[capacity];
+    }
+
+    /**
+     * Adds a record.
+     *
+     * @param rowID     row ID of a column, or the value of a field value
+     * @param timestamp timestamp of a column, or {@code 0}
+     * @return true if the block is full
+     */
+    boolean add(long columnID, long rowID, long timestamp) {
+        this.columnIDs[this.size] = columnID;
+        this.rowIDs[this.size] = rowID;
+        this.timestamps[this.size] = timestamp;
+        this.size++;
+        return this.size == this.columnIDs.length;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    final long[] columnIDs;
+    // row IDs of columns, or values of field values
+    final long[] rowIDs;
+    final long[] timestamps;
+    private int size = 0;
+}
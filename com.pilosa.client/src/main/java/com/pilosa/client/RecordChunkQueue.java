@@ -0,0 +1,281 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import com.pilosa.client.orm.Record;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Passes records from the import producer to an import worker in chunks.
+ * <p>
+ * The producer fills a chunk of records and passes the whole chunk through a bounded queue,
+ * so the queue is locked once per chunk instead of once per record. Records read from a {@link RecordCursor}
+ * are passed in {@link RecordBlock}s, which hold them in primitive arrays.
+ * The methods which add records are not thread safe; the consumer side and each producer should be used
+ * by a single thread. Additional producers add records through their own {@link Writer}.
+ */
+final class RecordChunkQueue {
+    static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    /**
+     * Creates a queue.
+     *
+     * @param chunkSize maximum number of records in a chunk
+     * @param capacity  maximum number of records waiting in the queue
+     */
+    RecordChunkQueue(int chunkSize, int capacity) {
+        this.chunkSize = Math.max(1, Math.min(chunkSize, capacity));
+        this.chunks = new ArrayBlockingQueue<>(Math.max(1, capacity / this.chunkSize));
+        this.writer = new Writer();
+    }
+
+    /**
+     * Adds a record to the current chunk, and passes the chunk to the consumer if it is full.
+     *
+     * @return false if the consumer has stopped
+     */
+    boolean put(Record record) throws InterruptedException {
+        return this.writer.put(record);
+    }
+
+    /**
+     * Adds a record read from a cursor to the current block, and passes the block to the consumer if it is full.
+     *
+     * @return false if the consumer has stopped
+     * @see RecordBlock#add(long, long, long)
+     */
+    boolean put(long columnID, long rowID, long timestamp) throws InterruptedException {
+        return this.writer.put(columnID, rowID, timestamp);
+    }
+
+    /**
+     * Passes the current chunk to the consumer even if it is not full.
+     *
+     * @return false if the consumer has stopped
+     */
+    boolean flush() throws InterruptedException {
+        return this.writer.flush();
+    }
+
+    /**
+     * Passes the remaining records and signals the consumer that there are no more records.
+     * The writers of other producers should be flushed before.
+     *
+     * @return false if the consumer has stopped
+     */
+    boolean close() throws InterruptedException {
+        return flush() && pass(END);
+    }
+
+    /**
+     * Passes the current chunk, followed by a request to import the records passed so far.
+     * The consumer calls {@link #flushed()} once it imported them.
+     *
+     * @param latch counted down once the consumer imported the records
+     * @return false if the consumer has stopped
+     */
+    boolean passFlush(CountDownLatch latch) throws InterruptedException {
+        return this.writer.passFlush(latch);
+    }
+
+    /**
+     * Returns a writer with its own chunk, for a producer which runs concurrently with others.
+     */
+    Writer writer() {
+        return new Writer();
+    }
+
+    /**
+     * Signals that the records passed before the last {@link #FLUSH} chunk are imported.
+     */
+    void flushed() {
+        CountDownLatch latch = this.flushLatches.poll();
+        if (latch != null) {
+            latch.countDown();
+        }
+    }
+
+    /**
+     * Returns the next chunk, waiting for it if necessary.
+     * A chunk is either a {@code Record[]} or a {@link RecordBlock}.
+     * {@link #FLUSH} is returned if the producer requested a flush.
+     * Otherwise an empty {@code Record[]} is returned once the producer closed the queue.
+     */
+    Object take() throws InterruptedException {
+        return taken(this.chunks.take());
+    }
+
+    /**
+     * Returns the next chunk, waiting up to the given time for it.
+     *
+     * @return the next chunk, or null if no chunk was passed in time
+     */
+    Object poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return taken(this.chunks.poll(timeout, unit));
+    }
+
+    /**
+     * Returns the number of records passed to the consumer but not taken yet.
+     */
+    int size() {
+        return this.pending.get();
+    }
+
+    /**
+     * Signals the producer that the consumer doesn't accept more records.
+     */
+    void stop() {
+        this.stopped = true;
+    }
+
+    private Object taken(Object chunk) {
+        if (chunk != null) {
+            this.pending.addAndGet(-recordCount(chunk));
+        }
+        return chunk;
+    }
+
+    private boolean pass(Object chunk) throws InterruptedException {
+        int count = recordCount(chunk);
+        this.pending.addAndGet(count);
+        while (!this.chunks.offer(chunk, STOP_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+            if (this.stopped) {
+                this.pending.addAndGet(-count);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int recordCount(Object chunk) {
+        if (chunk instanceof RecordBlock) {
+            return ((RecordBlock) chunk).size();
+        }
+        return ((Record[]) chunk).length;
+    }
+
+    /**
+     * Fills chunks of records for a single producer thread.
+     */
+    final class Writer {
+        private Writer() {
+            this.chunk = new Record[chunkSize];
+        }
+
+        /**
+         * @see RecordChunkQueue#put(Record)
+         */
+        boolean put(Record record) throws InterruptedException {
+            this.chunk[this.size++] = record;
+            if (this.size == chunkSize) {
+                Record[] full = this.chunk;
+                this.chunk = new Record[chunkSize];
+                this.size = 0;
+                return pass(full);
+            }
+            return true;
+        }
+
+        /**
+         * @see RecordChunkQueue#put(long, long, long)
+         */
+        boolean put(long columnID, long rowID, long timestamp) throws InterruptedException {
+            if (this.block == null) {
+                this.block = new RecordBlock(chunkSize);
+            }
+            if (this.block.add(columnID, rowID, timestamp)) {
+                RecordBlock full = this.block;
+                this.block = null;
+                return pass(full);
+            }
+            return true;
+        }
+
+        /**
+         * @see RecordChunkQueue#flush()
+         */
+        boolean flush() throws InterruptedException {
+            if (this.block != null) {
+                RecordBlock partial = this.block;
+                this.block = null;
+                if (!pass(partial)) {
+                    return false;
+                }
+            }
+            if (this.size == 0) {
+                return true;
+            }
+            Record[] partial = Arrays.copyOf(this.chunk, this.size);
+            Arrays.fill(this.chunk, 0, this.size, null);
+            this.size = 0;
+            return pass(partial);
+        }
+
+        /**
+         * @see RecordChunkQueue#passFlush(CountDownLatch)
+         */
+        boolean passFlush(CountDownLatch latch) throws InterruptedException {
+            if (!flush()) {
+                return false;
+            }
+            flushLatches.add(latch);
+            return pass(FLUSH);
+        }
+
+        private Record[] chunk;
+        private int size = 0;
+        // records read from a cursor, created once the first one is added
+        private RecordBlock block = null;
+    }
+
+    // returned by take to request the consumer to import the records it holds
+    static final Record[] FLUSH = new Record[0];
+    private static final Record[] END = new Record[0];
+    private static final long STOP_CHECK_INTERVAL_MS = 100;
+    private final int chunkSize;
+    private final BlockingQueue<Object> chunks;
+    private final Writer writer;
+    private volatile boolean stopped = false;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Queue<CountDownLatch> flushLatches = new ConcurrentLinkedQueue<>();
+}
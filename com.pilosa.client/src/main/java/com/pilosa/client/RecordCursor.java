@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+/**
+ * Reads records with IDs one at a time without creating an object for each record.
+ * <p>
+ * {@link #advance()} moves to the next record, and the accessors return the fields of the current record
+ * until the next call to {@link #advance()}. For set, mutex, bool and time fields a record is a column
+ * with a row ID, a column ID and an optional timestamp; for int fields it is a column ID and a value.
+ * Accessors for fields which the record doesn't have return {@code 0}.
+ * <p>
+ * Records with keys are imported with a {@link RecordIterator}.
+ *
+ * @see PilosaClient#importField(com.pilosa.client.orm.Field, RecordCursor, ImportOptions)
+ * @see RecordIteratorCursor
+ */
+public interface RecordCursor {
+    /**
+     * Moves to the next record.
+     *
+     * @return false if there are no more records
+     */
+    boolean advance();
+
+    long rowID();
+
+    long columnID();
+
+    /**
+     * Returns the timestamp of the current record, or {@code 0} if it doesn't have one.
+     */
+    long timestamp();
+
+    long value();
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import com.pilosa.client.orm.Record;
+
+import java.util.Iterator;
+
+/**
+ * Reads the records of an iterator through the {@link RecordCursor} interface.
+ * <p>
+ * The records of the iterator must be {@link Column}s or {@link FieldValue}s with IDs.
+ * Their keys, if any, are ignored.
+ */
+public final class RecordIteratorCursor implements RecordCursor {
+    public RecordIteratorCursor(Iterator<? extends Record> iterator) {
+        this.iterator = iterator;
+    }
+
+    @Override
+    public boolean advance() {
+        if (!this.iterator.hasNext()) {
+            return false;
+        }
+        Record record = this.iterator.next();
+        if (record instanceof Column) {
+            Column column = (Column) record;
+            this.rowID = column.rowID;
+            this.columnID = column.columnID;
+            this.timestamp = column.timestamp;
+            this.value = 0;
+        } else if (record instanceof FieldValue) {
+            FieldValue fieldValue = (FieldValue) record;
+            this.rowID = 0;
+            this.columnID = fieldValue.columnID;
+            this.timestamp = 0;
+            this.value = fieldValue.value;
+        } else {
+            throw new IllegalArgumentException("Expected a column or a field value, got: " + record);
+        }
+        return true;
+    }
+
+    @Override
+    public long rowID() {
+        return this.rowID;
+    }
+
+    @Override
+    public long columnID() {
+        return this.columnID;
+    }
+
+    @Override
+    public long timestamp() {
+        return this.timestamp;
+    }
+
+    @Override
+    public long value() {
+        return this.value;
+    }
+
+    private final Iterator<? extends Record> iterator;
+    private long rowID;
+    private long columnID;
+    private long timestamp;
+    private long value;
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * Roaring import request which writes its protobuf payload directly to the HTTP connection.
+ * <p>
+ * Only the serialized bitmaps of the views are kept in memory, the protobuf framing
+ * is written around them while the request is being sent.
+ */
+class RoaringImportRequest extends ImportRequest {
+    RoaringImportRequest(final String path, final Map<String, byte[]> views, boolean clear) {
+        super(path, null, "application/x-protobuf");
+        this.views = views;
+        this.clear = clear;
+        this.contentLength = computeContentLength();
+    }
+
+    @Override
+    byte[] getPayload() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) this.contentLength);
+        try {
+            writeTo(out);
+        } catch (IOException ex) {
+            // writing to a ByteArrayOutputStream doesn't fail
+            throw new RuntimeException(ex);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    long getContentLength() {
+        return this.contentLength;
+    }
+
+    @Override
+    HttpEntity toHttpEntity() {
+        return new RequestEntity();
+    }
+
+    @Override
+    void writeTo(OutputStream stream) throws IOException {
+        CodedOutputStream out = CodedOutputStream.newInstance(stream, BUFFER_SIZE);
+        if (this.clear) {
+            out.writeBool(Internal.ImportRoaringRequest.CLEAR_FIELD_NUMBER, true);
+        }
+        for (Map.Entry<String, byte[]> entry : this.views.entrySet()) {
+            String name = entry.getKey();
+            byte[] data = entry.getValue();
+            out.writeTag(Internal.ImportRoaringRequest.VIEWS_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            out.writeUInt32NoTag(viewSize(name, data));
+            if (!name.isEmpty()) {
+                out.writeString(Internal.ImportRoaringRequestView.NAME_FIELD_NUMBER, name);
+            }
+            // large arrays are written to the stream without going through the buffer
+            out.writeByteArray(Internal.ImportRoaringRequestView.DATA_FIELD_NUMBER, data);
+        }
+        out.flush();
+    }
+
+    private long computeContentLength() {
+        long size = this.clear ? CodedOutputStream.computeBoolSize(Internal.ImportRoaringRequest.CLEAR_FIELD_NUMBER, true) : 0;
+        for (Map.Entry<String, byte[]> entry : this.views.entrySet()) {
+            int viewSize = viewSize(entry.getKey(), entry.getValue());
+            size += CodedOutputStream.computeTagSize(Internal.ImportRoaringRequest.VIEWS_FIELD_NUMBER)
+                    + CodedOutputStream.computeUInt32SizeNoTag(viewSize)
+                    + viewSize;
+        }
+        return size;
+    }
+
+    private static int viewSize(String name, byte[] data) {
+        int size = CodedOutputStream.computeByteArraySize(Internal.ImportRoaringRequestView.DATA_FIELD_NUMBER, data);
+        if (!name.isEmpty()) {
+            size += CodedOutputStream.computeStringSize(Internal.ImportRoaringRequestView.NAME_FIELD_NUMBER, name);
+        }
+        return size;
+    }
+
+    private class RequestEntity extends AbstractHttpEntity {
+        RequestEntity() {
+            setContentType(contentType);
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return contentLength;
+        }
+
+        @Override
+        public InputStream getContent() {
+            return new ByteArrayInputStream(getPayload());
+        }
+
+        @Override
+        public void writeTo(OutputStream outStream) throws IOException {
+            RoaringImportRequest.this.writeTo(outStream);
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 8192;
+    private final Map<String, byte[]> views;
+    private final boolean clear;
+    private final long contentLength;
+}
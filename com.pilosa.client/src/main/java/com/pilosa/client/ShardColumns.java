@@ -34,18 +34,29 @@
 
 package com.pilosa.client;
 
-import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.pilosa.client.exceptions.PilosaException;
 import com.pilosa.client.orm.Field;
 import com.pilosa.client.orm.FieldType;
 import com.pilosa.client.orm.Record;
 import com.pilosa.roaring.Bitmap;
 
-import java.text.SimpleDateFormat;
+import java.io.IOException;
 import java.util.*;
 
-class ShardColumns implements ShardRecords {
+/**
+ * Holds the columns of a shard in growable primitive arrays.
+ * <p>
+ * Row and column keys are stored only if the field or the index uses keys.
+ */
+class ShardColumns implements BufferedShardRecords {
     public static ShardColumns create(final Field field, long shard, long shardWidth, ImportOptions options) {
-        return new ShardColumns(field, shard, shardWidth, options.isRoaring(), options.isClear());
+        return create(field, shard, shardWidth, options, options.isSorted());
+    }
+
+    static ShardColumns create(final Field field, long shard, long shardWidth, ImportOptions options, boolean sorted) {
+        return new ShardColumns(field, shard, shardWidth, options.isRoaring(), options.isClear(),
+                field.getIndex().getOptions().isKeys(), field.getOptions().isKeys(), sorted);
     }
 
     @Override
@@ -55,34 +66,97 @@ class ShardColumns implements ShardRecords {
 
     @Override
     public String getIndexName() {
-        return null;
+        return this.field.getIndex().getName();
     }
 
     @Override
     public boolean isIndexKeys() {
-        return this.field.getIndex().getOptions().isKeys();
+        return this.indexKeys;
     }
 
     @Override
     public boolean isFieldKeys() {
-        return this.field.getOptions().isKeys();
+        return this.fieldKeys;
     }
 
     @Override
     public void add(Record record) {
         Column column = (Column) record;
         // TODO: check column
-        this.columns.add(column);
+        ensureCapacity(this.size + 1);
+        int i = this.size;
+        this.rowIDs[i] = column.rowID;
+        this.columnIDs[i] = column.columnID;
+        this.timestamps[i] = column.timestamp;
+        if (this.fieldKeys) {
+            this.rowKeys[i] = column.rowKey;
+            this.keyBytes += Util.stringBytes(column.rowKey);
+        }
+        if (this.indexKeys) {
+            this.columnKeys[i] = column.columnKey;
+            this.keyBytes += Util.stringBytes(column.columnKey);
+        }
+        this.size++;
+        this.order = null;
+    }
+
+    void add(long rowID, String rowKey, long columnID, String columnKey, long timestamp) {
+        ensureCapacity(this.size + 1);
+        int i = this.size;
+        this.rowIDs[i] = rowID;
+        this.columnIDs[i] = columnID;
+        this.timestamps[i] = timestamp;
+        if (this.fieldKeys) {
+            this.rowKeys[i] = rowKey;
+            this.keyBytes += Util.stringBytes(rowKey);
+        }
+        if (this.indexKeys) {
+            this.columnKeys[i] = columnKey;
+            this.keyBytes += Util.stringBytes(columnKey);
+        }
+        this.size++;
+        this.order = null;
+    }
+
+    void add(long rowID, long columnID, long timestamp) {
+        ensureCapacity(this.size + 1);
+        int i = this.size;
+        this.rowIDs[i] = rowID;
+        this.columnIDs[i] = columnID;
+        this.timestamps[i] = timestamp;
+        this.size++;
+        this.order = null;
     }
 
     @Override
     public int size() {
-        return this.columns.size();
+        return this.size;
+    }
+
+    @Override
+    public long byteSize() {
+        long capacity = this.rowIDs.length;
+        long bytes = capacity * 3 * 8 + this.keyBytes;
+        if (this.rowKeys != null) {
+            bytes += capacity * Util.REFERENCE_BYTES;
+        }
+        if (this.columnKeys != null) {
+            bytes += capacity * Util.REFERENCE_BYTES;
+        }
+        return bytes;
     }
 
     @Override
     public void clear() {
-        this.columns.clear();
+        if (this.rowKeys != null) {
+            Arrays.fill(this.rowKeys, 0, this.size, null);
+        }
+        if (this.columnKeys != null) {
+            Arrays.fill(this.columnKeys, 0, this.size, null);
+        }
+        this.size = 0;
+        this.keyBytes = 0;
+        this.order = null;
     }
 
     @Override
@@ -93,46 +167,82 @@ class ShardColumns implements ShardRecords {
         return toCSVImportRequest();
     }
 
-    public ImportRequest toCSVImportRequest() {
-        if (!sorted) {
-            Collections.sort(columns);
-            sorted = true;
+    /**
+     * Translates the row and column keys using the client when roaring imports are enabled,
+     * so keyed columns can be imported directly to the nodes which own their shards.
+     */
+    @Override
+    public List<ShardRecords> translateKeys(PilosaClient client) {
+        if (!this.roaring || !(this.indexKeys || this.fieldKeys)) {
+            return null;
+        }
+        int size = this.size;
+        long[] rowIDs = this.fieldKeys ? client.translateRowKeys(this.field, this.rowKeys, size) : this.rowIDs;
+        long[] columnIDs = this.indexKeys ?
+                client.translateColumnKeys(this.field.getIndex(), this.columnKeys, size) : this.columnIDs;
+        Map<Long, ShardColumns> shardColumns = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            long shard = columnIDs[i] / this.shardWidth;
+            ShardColumns columns = shardColumns.get(shard);
+            if (columns == null) {
+                columns = new ShardColumns(this.field, shard, this.shardWidth, true, this.clear_, false, false, false);
+                shardColumns.put(shard, columns);
+            }
+            columns.add(rowIDs[i], columnIDs[i], this.timestamps[i]);
         }
+        return new ArrayList<ShardRecords>(shardColumns.values());
+    }
 
-        Internal.ImportRequest.Builder requestBuilder = Internal.ImportRequest.newBuilder()
-                .setIndex(field.getIndex().getName())
-                .setField(field.getName())
-                .setShard(shard);
+    public ImportRequest toCSVImportRequest() {
+        int[] order = sortedOrder();
+        int size = this.size;
+        String indexName = field.getIndex().getName();
+        String fieldName = field.getName();
 
-        if (isIndexKeys() && isFieldKeys()) {
-            for (Column column : columns){
-                requestBuilder.addRowKeys(column.rowKey);
-                requestBuilder.addColumnKeys(column.columnKey);
-                requestBuilder.addTimestamps(column.timestamp);
-            }
+        int messageSize = CodedOutputStream.computeStringSize(Internal.ImportRequest.INDEX_FIELD_NUMBER, indexName)
+                + CodedOutputStream.computeStringSize(Internal.ImportRequest.FIELD_FIELD_NUMBER, fieldName)
+                + Util.packedLongsSize(Internal.ImportRequest.TIMESTAMPS_FIELD_NUMBER, this.timestamps, order, size);
+        if (this.shard != 0) {
+            messageSize += CodedOutputStream.computeUInt64Size(Internal.ImportRequest.SHARD_FIELD_NUMBER, this.shard);
         }
-        else if(!isIndexKeys() && isFieldKeys()) {
-            for (Column column : columns){
-                requestBuilder.addRowKeys(column.rowKey);
-                requestBuilder.addColumnIDs(column.columnID);
-                requestBuilder.addTimestamps(column.timestamp);
-            }
+        if (this.fieldKeys) {
+            messageSize += Util.stringsSize(Internal.ImportRequest.ROWKEYS_FIELD_NUMBER, this.rowKeys, order, size);
+        } else {
+            messageSize += Util.packedLongsSize(Internal.ImportRequest.ROWIDS_FIELD_NUMBER, this.rowIDs, order, size);
         }
-        else if(isIndexKeys() && !isFieldKeys()){
-            for (Column column : columns){
-                requestBuilder.addRowIDs(column.rowID);
-                requestBuilder.addColumnKeys(column.columnKey);
-                requestBuilder.addTimestamps(column.timestamp);
-            }
+        if (this.indexKeys) {
+            messageSize += Util.stringsSize(Internal.ImportRequest.COLUMNKEYS_FIELD_NUMBER, this.columnKeys, order, size);
+        } else {
+            messageSize += Util.packedLongsSize(Internal.ImportRequest.COLUMNIDS_FIELD_NUMBER, this.columnIDs, order, size);
         }
-        else {
-            for (Column column : columns){
-                requestBuilder.addRowIDs(column.rowID);
-                requestBuilder.addColumnIDs(column.columnID);
-                requestBuilder.addTimestamps(column.timestamp);
+
+        byte[] payload = new byte[messageSize];
+        CodedOutputStream out = CodedOutputStream.newInstance(payload);
+        try {
+            // fields are written in the field number order, same as the generated code
+            out.writeString(Internal.ImportRequest.INDEX_FIELD_NUMBER, indexName);
+            out.writeString(Internal.ImportRequest.FIELD_FIELD_NUMBER, fieldName);
+            if (this.shard != 0) {
+                out.writeUInt64(Internal.ImportRequest.SHARD_FIELD_NUMBER, this.shard);
+            }
+            if (!this.fieldKeys) {
+                Util.writePackedLongs(out, Internal.ImportRequest.ROWIDS_FIELD_NUMBER, this.rowIDs, order, size);
+            }
+            if (!this.indexKeys) {
+                Util.writePackedLongs(out, Internal.ImportRequest.COLUMNIDS_FIELD_NUMBER, this.columnIDs, order, size);
+            }
+            Util.writePackedLongs(out, Internal.ImportRequest.TIMESTAMPS_FIELD_NUMBER, this.timestamps, order, size);
+            if (this.fieldKeys) {
+                Util.writeStrings(out, Internal.ImportRequest.ROWKEYS_FIELD_NUMBER, this.rowKeys, order, size);
             }
+            if (this.indexKeys) {
+                Util.writeStrings(out, Internal.ImportRequest.COLUMNKEYS_FIELD_NUMBER, this.columnKeys, order, size);
+            }
+            out.checkNoSpaceLeft();
+        } catch (IOException ex) {
+            throw new PilosaException("Error while encoding the import request", ex);
         }
-        return ImportRequest.createCSVImport(field, requestBuilder.build().toByteArray(), this.clear_);
+        return ImportRequest.createCSVImport(field, payload, this.clear_);
     }
 
     ImportRequest toRoaringImportRequest() {
@@ -143,36 +253,77 @@ class ShardColumns implements ShardRecords {
         else {
             views = columnsToBitmap();
         }
-        Internal.ImportRoaringRequest.Builder reqBuilder = Internal.ImportRoaringRequest.newBuilder();
-        for (Map.Entry<String, Bitmap> entry : views.entrySet()) {
-            byte[] bmpData = entry.getValue().serialize().array();
-            ByteString data = ByteString.copyFrom(bmpData);
-            Internal.ImportRoaringRequestView view = Internal.ImportRoaringRequestView.newBuilder()
-                    .setName(entry.getKey())
-                    .setData(data)
-                    .build();
-            reqBuilder.addViews(view);
+        Map<String, byte[]> viewData = new HashMap<>(views.size());
+        Iterator<Map.Entry<String, Bitmap>> it = views.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Bitmap> entry = it.next();
+            // the serialized buffer is allocated with the exact size of the bitmap,
+            // the bitmap itself can be collected once it is serialized.
+            viewData.put(entry.getKey(), entry.getValue().serialize().array());
+            it.remove();
         }
-        reqBuilder.setClear(this.clear_);
-        byte[] payload = reqBuilder.build().toByteArray();
-        return ImportRequest.createRoaringImport(this.field, this.shard, payload, this.clear_);
+        return ImportRequest.createRoaringImport(this.field, this.shard, viewData, this.clear_);
     }
 
     ShardColumns(final Field field, long shard, long shardWidth, boolean roaring, boolean clear) {
+        this(field, shard, shardWidth, roaring, clear,
+                field.getIndex().getOptions().isKeys(), field.getOptions().isKeys(), false);
+    }
+
+    private ShardColumns(final Field field, long shard, long shardWidth, boolean roaring, boolean clear,
+                         boolean indexKeys, boolean fieldKeys, boolean sorted) {
         this.field = field;
         this.shard = shard;
         this.shardWidth = shardWidth;
-        this.columns = new ArrayList<>();
         this.roaring = roaring;
         this.clear_ = clear;
+        this.indexKeys = indexKeys;
+        this.fieldKeys = fieldKeys;
+        this.sorted = sorted;
+        this.rowIDs = new long[INITIAL_CAPACITY];
+        this.columnIDs = new long[INITIAL_CAPACITY];
+        this.timestamps = new long[INITIAL_CAPACITY];
+        if (this.fieldKeys) {
+            this.rowKeys = new String[INITIAL_CAPACITY];
+        }
+        if (this.indexKeys) {
+            this.columnKeys = new String[INITIAL_CAPACITY];
+        }
+    }
+
+    private int[] sortedOrder() {
+        if (this.order == null) {
+            // keyed records have zero IDs, the sort keeps them in the insertion order
+            this.order = this.sorted ? RadixSort.identity(this.size, this.orderBuffer) :
+                    RadixSort.sort(this.rowIDs, this.columnIDs, this.size, this.orderBuffer);
+            this.orderBuffer = this.order;
+        }
+        return this.order;
+    }
+
+    private void ensureCapacity(int capacity) {
+        int length = this.rowIDs.length;
+        if (capacity <= length) {
+            return;
+        }
+        int newLength = Math.max(capacity, length + (length >> 1));
+        this.rowIDs = Arrays.copyOf(this.rowIDs, newLength);
+        this.columnIDs = Arrays.copyOf(this.columnIDs, newLength);
+        this.timestamps = Arrays.copyOf(this.timestamps, newLength);
+        if (this.rowKeys != null) {
+            this.rowKeys = Arrays.copyOf(this.rowKeys, newLength);
+        }
+        if (this.columnKeys != null) {
+            this.columnKeys = Arrays.copyOf(this.columnKeys, newLength);
+        }
     }
 
     private Map<String, Bitmap> columnsToBitmap() {
         long shardWidth = this.shardWidth;
         Map<String, Bitmap> result = new HashMap<>(1);
         Bitmap bmp = new Bitmap();
-        for (Column b : this.columns) {
-            bmp.add(b.rowID * shardWidth + (b.columnID % shardWidth));
+        for (int i = 0; i < this.size; i++) {
+            bmp.add(this.rowIDs[i] * shardWidth + (this.columnIDs[i] % shardWidth));
         }
         result.put("", bmp);
         return result;
@@ -180,18 +331,29 @@ class ShardColumns implements ShardRecords {
 
     private Map<String, Bitmap> columnsToBitmap(TimeQuantum timeQuantum) {
         long shardWidth = this.shardWidth;
+        TimeViews timeViews = new TimeViews(timeQuantum);
         Map<String, Bitmap> views = new HashMap<>();
         Bitmap standard = new Bitmap();
-        for (Column b : this.columns) {
-            long bit = b.rowID * shardWidth + (b.columnID % shardWidth);
+        String[] viewNames = null;
+        Bitmap[] viewBitmaps = null;
+        for (int i = 0; i < this.size; i++) {
+            long bit = this.rowIDs[i] * shardWidth + (this.columnIDs[i] % shardWidth);
             standard.add(bit);
-            String[] viewNames = viewsByTime(b.timestamp, timeQuantum);
-            for (String viewName : viewNames) {
-                Bitmap bmp = views.get(viewName);
-                if (bmp == null) {
-                    bmp = new Bitmap();
-                    views.put(viewName, bmp);
+            String[] names = timeViews.get(this.timestamps[i]);
+            if (names != viewNames) {
+                // the bitmaps are looked up only when the hour changes
+                viewNames = names;
+                viewBitmaps = new Bitmap[names.length];
+                for (int v = 0; v < names.length; v++) {
+                    Bitmap bmp = views.get(names[v]);
+                    if (bmp == null) {
+                        bmp = new Bitmap();
+                        views.put(names[v], bmp);
+                    }
+                    viewBitmaps[v] = bmp;
                 }
+            }
+            for (Bitmap bmp : viewBitmaps) {
                 bmp.add(bit);
             }
         }
@@ -199,37 +361,24 @@ class ShardColumns implements ShardRecords {
         return views;
     }
 
-    private String[] viewsByTime(long timestamp, TimeQuantum timeQuantum) {
-        String tqs = timeQuantum.toString();
-        String[] result = new String[tqs.length()];
-        for (int i = 0; i < tqs.length(); i++) {
-            result[i] = viewByTimeUnit(timestamp, tqs.charAt(i));
-        }
-        return result;
-    }
-
-    private String viewByTimeUnit(long timestamp, char c) {
-        SimpleDateFormat fmt = this.timeFormats.get(c);
-        if (fmt == null) {
-            return "";
-        }
-        return fmt.format(new Date(timestamp / 1000000));
-    }
-
-    private Map<Character, SimpleDateFormat> timeFormats = new HashMap<>(4);
-   {
-        timeFormats.put('Y', new SimpleDateFormat("yyyy"));
-        timeFormats.put('M', new SimpleDateFormat("yyyyMM"));
-        timeFormats.put('D', new SimpleDateFormat("yyyyMMdd"));
-        timeFormats.put('H', new SimpleDateFormat("yyyyMMddHH"));
-    }
-
+    private static final int INITIAL_CAPACITY = 16;
 
     private final Field field;
     private final long shard;
     private final long shardWidth;
-    private List<Column> columns;
-    private boolean sorted = false;
+    private final boolean indexKeys;
+    private final boolean fieldKeys;
+    // the columns are added in the row and column order
+    private final boolean sorted;
+    private long[] rowIDs;
+    private long[] columnIDs;
+    private long[] timestamps;
+    private String[] rowKeys = null;
+    private String[] columnKeys = null;
+    private int size = 0;
+    private long keyBytes = 0;
+    private int[] order = null;
+    private int[] orderBuffer = null;
     private final boolean roaring;
     private final boolean clear_;
 }
@@ -34,16 +34,28 @@
 
 package com.pilosa.client;
 
+import com.google.protobuf.CodedOutputStream;
+import com.pilosa.client.exceptions.PilosaException;
 import com.pilosa.client.orm.Field;
 import com.pilosa.client.orm.Record;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
-public class ShardFieldValues implements ShardRecords {
+/**
+ * Holds the field values of a shard in growable primitive arrays.
+ * <p>
+ * The values are sent using a value import. With roaring imports, the column keys are
+ * translated on the client, so the values are sent to the nodes which own their shards.
+ */
+public class ShardFieldValues implements BufferedShardRecords {
     public static ShardFieldValues create(final Field field, final long shard, ImportOptions options) {
-        return new ShardFieldValues(field, shard, options.isClear());
+        return new ShardFieldValues(field, shard, options.getShardWidth(), options.isRoaring(), options.isClear(),
+                field.getIndex().getOptions().isKeys(), options.isSorted());
     }
 
     @Override
@@ -58,7 +70,7 @@ public class ShardFieldValues implements ShardRecords {
 
     @Override
     public boolean isIndexKeys() {
-        return this.field.getIndex().getOptions().isKeys();
+        return this.indexKeys;
     }
 
     @Override
@@ -68,70 +80,190 @@ public class ShardFieldValues implements ShardRecords {
 
     @Override
     public int size() {
-        return this.fieldValues.size();
+        return this.size;
     }
 
     @Override
     public void add(Record record) {
         FieldValue fieldValue = (FieldValue) record;
         // TODO: check fieldValue
-        this.fieldValues.add(fieldValue);
+        ensureCapacity(this.size + 1);
+        int i = this.size;
+        this.columnIDs[i] = fieldValue.columnID;
+        this.values[i] = fieldValue.value;
+        if (this.indexKeys) {
+            this.columnKeys[i] = fieldValue.columnKey;
+            this.keyBytes += Util.stringBytes(fieldValue.columnKey);
+        }
+        this.size++;
+        this.order = null;
+    }
+
+    void add(long columnID, String columnKey, long value) {
+        ensureCapacity(this.size + 1);
+        int i = this.size;
+        this.columnIDs[i] = columnID;
+        this.values[i] = value;
+        if (this.indexKeys) {
+            this.columnKeys[i] = columnKey;
+            this.keyBytes += Util.stringBytes(columnKey);
+        }
+        this.size++;
+        this.order = null;
+    }
+
+    void add(long columnID, long value) {
+        ensureCapacity(this.size + 1);
+        int i = this.size;
+        this.columnIDs[i] = columnID;
+        this.values[i] = value;
+        this.size++;
+        this.order = null;
+    }
+
+    @Override
+    public long byteSize() {
+        long capacity = this.columnIDs.length;
+        long bytes = capacity * 2 * 8 + this.keyBytes;
+        if (this.columnKeys != null) {
+            bytes += capacity * Util.REFERENCE_BYTES;
+        }
+        return bytes;
     }
 
     @Override
     public void clear() {
-        this.fieldValues.clear();
+        if (this.columnKeys != null) {
+            Arrays.fill(this.columnKeys, 0, this.size, null);
+        }
+        this.size = 0;
+        this.keyBytes = 0;
+        this.order = null;
     }
 
+    /**
+     * Translates the column keys using the client when roaring imports are enabled,
+     * so keyed values can be imported directly to the nodes which own their shards.
+     */
     @Override
-    public ImportRequest toImportRequest() {
-        if (!this.sorted) {
-            Collections.sort(this.fieldValues);
-            this.sorted = true;
+    public List<ShardRecords> translateKeys(PilosaClient client) {
+        if (!this.roaring || !this.indexKeys) {
+            return null;
         }
+        long[] columnIDs = client.translateColumnKeys(this.field.getIndex(), this.columnKeys, this.size);
+        Map<Long, ShardFieldValues> shardValues = new HashMap<>();
+        for (int i = 0; i < this.size; i++) {
+            long shard = columnIDs[i] / this.shardWidth;
+            ShardFieldValues values = shardValues.get(shard);
+            if (values == null) {
+                values = new ShardFieldValues(this.field, shard, this.shardWidth, true, this.clear_, false, false);
+                shardValues.put(shard, values);
+            }
+            values.add(columnIDs[i], this.values[i]);
+        }
+        return new ArrayList<ShardRecords>(shardValues.values());
+    }
 
-        int fieldValueCount = this.fieldValues.size();
+    @Override
+    public ImportRequest toImportRequest() {
+        int[] order = sortedOrder();
+        int size = this.size;
+        String indexName = this.field.getIndex().getName();
+        String fieldName = this.field.getName();
 
-        List<Long> values = new ArrayList<>(fieldValueCount);
-        Internal.ImportValueRequest.Builder requestBuilder = Internal.ImportValueRequest.newBuilder()
-                .setIndex(this.field.getIndex().getName())
-                .setField(this.field.getName())
-                .setShard(shard);
+        int messageSize = CodedOutputStream.computeStringSize(Internal.ImportValueRequest.INDEX_FIELD_NUMBER, indexName)
+                + CodedOutputStream.computeStringSize(Internal.ImportValueRequest.FIELD_FIELD_NUMBER, fieldName)
+                + Util.packedLongsSize(Internal.ImportValueRequest.VALUES_FIELD_NUMBER, this.values, order, size);
+        if (this.shard != 0) {
+            messageSize += CodedOutputStream.computeUInt64Size(Internal.ImportValueRequest.SHARD_FIELD_NUMBER, this.shard);
+        }
+        if (this.indexKeys) {
+            messageSize += Util.stringsSize(Internal.ImportValueRequest.COLUMNKEYS_FIELD_NUMBER, this.columnKeys, order, size);
+        } else {
+            messageSize += Util.packedLongsSize(Internal.ImportValueRequest.COLUMNIDS_FIELD_NUMBER, this.columnIDs, order, size);
+        }
 
-        if (isIndexKeys()) {
-            List<String> columnKeys = new ArrayList<>(fieldValueCount);
-            for (FieldValue fieldValue : this.fieldValues) {
-                columnKeys.add(fieldValue.columnKey);
-                values.add(fieldValue.value);
+        byte[] payload = new byte[messageSize];
+        CodedOutputStream out = CodedOutputStream.newInstance(payload);
+        try {
+            // fields are written in the field number order, same as the generated code
+            out.writeString(Internal.ImportValueRequest.INDEX_FIELD_NUMBER, indexName);
+            out.writeString(Internal.ImportValueRequest.FIELD_FIELD_NUMBER, fieldName);
+            if (this.shard != 0) {
+                out.writeUInt64(Internal.ImportValueRequest.SHARD_FIELD_NUMBER, this.shard);
             }
-            requestBuilder.addAllColumnKeys(columnKeys);
-            columnKeys = null;
-        } else {
-            List<Long> columnIDs = new ArrayList<>(fieldValueCount);
-            for (FieldValue fieldValue : this.fieldValues) {
-                columnIDs.add(fieldValue.columnID);
-                values.add(fieldValue.value);
+            if (!this.indexKeys) {
+                Util.writePackedLongs(out, Internal.ImportValueRequest.COLUMNIDS_FIELD_NUMBER, this.columnIDs, order, size);
             }
-            requestBuilder.addAllColumnIDs(columnIDs);
-            columnIDs = null;
+            Util.writePackedLongs(out, Internal.ImportValueRequest.VALUES_FIELD_NUMBER, this.values, order, size);
+            if (this.indexKeys) {
+                Util.writeStrings(out, Internal.ImportValueRequest.COLUMNKEYS_FIELD_NUMBER, this.columnKeys, order, size);
+            }
+            out.checkNoSpaceLeft();
+        } catch (IOException ex) {
+            throw new PilosaException("Error while encoding the import request", ex);
         }
+        return ImportRequest.createCSVImport(this.field, payload, this.clear_);
+    }
 
-        requestBuilder.addAllValues(values);
-        values = null;
-
-        return ImportRequest.createCSVImport(this.field, requestBuilder.build().toByteArray(), this.clear_);
+    ShardFieldValues(final Field field, final long shard, long shardWidth, boolean roaring, boolean clear) {
+        this(field, shard, shardWidth, roaring, clear, field.getIndex().getOptions().isKeys(), false);
     }
 
-    ShardFieldValues(final Field field, final long shard, boolean clear) {
+    private ShardFieldValues(final Field field, final long shard, long shardWidth, boolean roaring, boolean clear,
+                             boolean indexKeys, boolean sorted) {
         this.field = field;
         this.shard = shard;
-        this.fieldValues = new ArrayList<>();
+        this.shardWidth = shardWidth;
+        this.roaring = roaring;
         this.clear_ = clear;
+        this.indexKeys = indexKeys;
+        this.sorted = sorted;
+        this.columnIDs = new long[INITIAL_CAPACITY];
+        this.values = new long[INITIAL_CAPACITY];
+        if (this.indexKeys) {
+            this.columnKeys = new String[INITIAL_CAPACITY];
+        }
     }
 
+    private int[] sortedOrder() {
+        if (this.order == null) {
+            // We sort only by the columnID, since columnKey is not used for sorting during import.
+            this.order = this.sorted ? RadixSort.identity(this.size, this.orderBuffer) :
+                    RadixSort.sort(this.columnIDs, null, this.size, this.orderBuffer);
+            this.orderBuffer = this.order;
+        }
+        return this.order;
+    }
+
+    private void ensureCapacity(int capacity) {
+        int length = this.columnIDs.length;
+        if (capacity <= length) {
+            return;
+        }
+        int newLength = Math.max(capacity, length + (length >> 1));
+        this.columnIDs = Arrays.copyOf(this.columnIDs, newLength);
+        this.values = Arrays.copyOf(this.values, newLength);
+        if (this.columnKeys != null) {
+            this.columnKeys = Arrays.copyOf(this.columnKeys, newLength);
+        }
+    }
+
+    private static final int INITIAL_CAPACITY = 16;
+
     private final Field field;
     private final long shard;
-    private List<FieldValue> fieldValues;
-    private boolean sorted = false;
+    private final long shardWidth;
+    private final boolean roaring;
+    private final boolean indexKeys;
+    // the values are added in the column order
+    private final boolean sorted;
+    private long[] columnIDs;
+    private long[] values;
+    private String[] columnKeys = null;
+    private int size = 0;
+    private long keyBytes = 0;
+    private int[] order = null;
+    private int[] orderBuffer = null;
     private boolean clear_ = false;
 }
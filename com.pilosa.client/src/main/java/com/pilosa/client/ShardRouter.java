@@ -0,0 +1,166 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import com.pilosa.client.exceptions.PilosaException;
+import com.pilosa.client.orm.Field;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Assigns shards to import workers by the node which owns them.
+ * <p>
+ * A shard is assigned when it is first seen, to the worker with the fewest shards of the same node,
+ * and among those, the fewest shards overall. So the shards of each node are spread over the workers,
+ * and no worker is left with the shards of a single node while the others are idle.
+ * A shard stays with its worker, which keeps the order of its records.
+ * <p>
+ * The nodes of the shards following a new shard are fetched in the background,
+ * so the thread which reads the records doesn't wait for a request to the server for every new shard.
+ */
+final class ShardRouter {
+    ShardRouter(PilosaClient client, Field field, ImportTasks tasks, int workerCount) {
+        this.client = client;
+        this.indexName = field.getIndex().getName();
+        this.tasks = tasks;
+        this.workerShards = new int[workerCount];
+    }
+
+    /**
+     * Returns the worker which imports the given shard.
+     */
+    int workerIndex(long shard) {
+        Integer index = this.assignments.get(shard);
+        if (index != null) {
+            return index;
+        }
+        String node = this.nodes.get(shard);
+        if (node == null) {
+            this.requested.add(shard);
+            node = primaryNode(shard);
+        }
+        prefetch(shard);
+        synchronized (this) {
+            index = this.assignments.get(shard);
+            if (index != null) {
+                return index;
+            }
+            int[] nodeShards = this.nodeShards.get(node);
+            if (nodeShards == null) {
+                nodeShards = new int[this.workerShards.length];
+                this.nodeShards.put(node, nodeShards);
+            }
+            int best = 0;
+            for (int i = 1; i < nodeShards.length; i++) {
+                if (nodeShards[i] < nodeShards[best]
+                        || (nodeShards[i] == nodeShards[best] && this.workerShards[i] < this.workerShards[best])) {
+                    best = i;
+                }
+            }
+            nodeShards[best]++;
+            this.workerShards[best]++;
+            this.assignments.put(shard, best);
+            return best;
+        }
+    }
+
+    /**
+     * Stops fetching the nodes of the shards in the background.
+     */
+    void close() {
+        this.closed = true;
+    }
+
+    private void prefetch(long shard) {
+        final List<Long> shards = new ArrayList<>(PREFETCH_SHARDS);
+        for (long s = shard + 1; s <= shard + PREFETCH_SHARDS; s++) {
+            if (this.requested.add(s)) {
+                shards.add(s);
+            }
+        }
+        if (shards.isEmpty() || this.closed) {
+            return;
+        }
+        try {
+            this.tasks.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (long s : shards) {
+                        if (closed) {
+                            return;
+                        }
+                        try {
+                            List<String> hosts = client.importHosts(indexName, s);
+                            nodes.put(s, hosts.isEmpty() ? "" : hosts.get(0));
+                        } catch (PilosaException e) {
+                            // the node is fetched again when the shard is seen
+                            logger.debug("Could not prefetch the nodes for shard {}: {}", s, e.getMessage());
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the import was cancelled
+        }
+    }
+
+    private String primaryNode(long shard) {
+        try {
+            List<String> hosts = this.client.importHosts(this.indexName, shard);
+            return hosts.isEmpty() ? "" : hosts.get(0);
+        } catch (PilosaException e) {
+            // the shard is still imported, the sender fetches its nodes again
+            logger.warn("Could not fetch the nodes for shard {}: {}", shard, e.getMessage());
+            return "";
+        }
+    }
+
+    static final int PREFETCH_SHARDS = 16;
+    private static final Logger logger = LoggerFactory.getLogger("pilosa");
+    private final PilosaClient client;
+    private final String indexName;
+    private final ImportTasks tasks;
+    private final Map<Long, Integer> assignments = new ConcurrentHashMap<>();
+    // the nodes fetched in the background
+    private final Map<Long, String> nodes = new ConcurrentHashMap<>();
+    private final Set<Long> requested = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    private final Map<String, int[]> nodeShards = new HashMap<>();
+    private final int[] workerShards;
+    private volatile boolean closed = false;
+}
@@ -0,0 +1,390 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import com.pilosa.client.exceptions.PilosaException;
+import com.pilosa.client.orm.Field;
+import com.pilosa.client.orm.FieldType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Imports records in two phases using spill files.
+ * <p>
+ * First, the records are partitioned by shard into a spill file per shard. Then each shard is read back
+ * and imported in requests of {@link ImportOptions#getBatchSize()} records. This trades local disk I/O for
+ * fewer and larger requests when unsorted records span many shards. The spill files are read in slices,
+ * so a shard is never loaded into memory at once.
+ * <p>
+ * Only records with IDs can be spilled, since records with keys don't have a shard before their keys are translated.
+ */
+final class SpillImport {
+    SpillImport(PilosaClient client, Field field, ImportOptions options,
+                BlockingQueue<ImportStatusUpdate> statusQueue, ImportMetricsCollector metrics) {
+        if (field.getIndex().getOptions().isKeys() || field.getOptions().isKeys()) {
+            throw new PilosaException("Spilling imports are not supported for fields or indexes with keys");
+        }
+        this.client = client;
+        this.field = field;
+        this.options = options;
+        this.statusQueue = statusQueue;
+        this.metrics = metrics;
+        // a column is stored as row ID, column ID and timestamp, a field value as column ID and value
+        this.recordLength = (field.getOptions().getFieldType() == FieldType.INT) ? 2 : 3;
+        ContentCodec codec = options.getRequestCodec();
+        this.codec = (codec != null) ? codec : client.getOptions().getRequestCodec();
+        long memoryBudget = options.getMemoryBudget();
+        this.maxBufferedLongs = (memoryBudget > 0) ? Math.max(1, memoryBudget / 8) : MAX_BUFFERED_LONGS;
+        // each import thread reads a slice of a shard at a time
+        long sliceRecords = Math.min(Math.max(1, options.getBatchSize()), MAX_SLICE_LONGS / this.recordLength);
+        if (memoryBudget > 0) {
+            long threadCount = Math.max(1, options.getThreadCount());
+            sliceRecords = Math.min(sliceRecords, Math.max(1, memoryBudget / (8L * this.recordLength * threadCount)));
+        }
+        this.sliceLongs = (int) sliceRecords * this.recordLength;
+    }
+
+    void run(RecordCursor cursor, ImportHandle handle) {
+        Path directory;
+        try {
+            directory = Files.createTempDirectory(Paths.get(this.options.getSpillDirectory()), "pilosa-import-");
+        } catch (IOException e) {
+            throw new PilosaException("Error while creating the spill directory", e);
+        }
+        try {
+            partition(cursor, directory, handle);
+            importShards();
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    /**
+     * Appends the records to the buffers of their shards, and writes the buffers to the spill files
+     * once they hold too much data. The records left in the buffers are imported from memory.
+     */
+    private void partition(RecordCursor cursor, Path directory, ImportHandle handle) {
+        final long shardWidth = this.options.getShardWidth();
+        final int recordLength = this.recordLength;
+        long bufferedLongs = 0;
+        while (handle == null || !handle.isCancelRequested()) {
+            if (!cursor.advance()) {
+                break;
+            }
+            long shard = cursor.columnID() / shardWidth;
+            ShardBuffer buffer = this.buffers.get(shard);
+            if (buffer == null) {
+                buffer = new ShardBuffer(directory.resolve(shard + ".spill"));
+                this.buffers.put(shard, buffer);
+            }
+            if (recordLength == 2) {
+                buffer.add(cursor.columnID(), cursor.value());
+            } else {
+                buffer.add(cursor.rowID(), cursor.columnID(), cursor.timestamp());
+            }
+            bufferedLongs += recordLength;
+            this.readCount++;
+            if (bufferedLongs >= this.maxBufferedLongs) {
+                for (ShardBuffer b : this.buffers.values()) {
+                    b.spill();
+                }
+                bufferedLongs = 0;
+                this.metrics.addRead(this.readCount);
+                this.readCount = 0;
+            }
+        }
+        this.metrics.addRead(this.readCount);
+        this.readCount = 0;
+    }
+
+    private void importShards() {
+        ImportEngine engine = this.client.importEngine();
+        int threadCount;
+        try {
+            threadCount = engine.acquireWorkers(this.options.getThreadCount());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PilosaException("Interrupted while waiting for an import thread", e);
+        }
+        try {
+            importShards(threadCount);
+        } finally {
+            engine.releaseWorkers(threadCount);
+        }
+    }
+
+    private void importShards(final int threadCount) {
+        final ImportSender sender = new ImportSender(this.client, this.options, this.statusQueue, null, this.metrics);
+        ImportTasks service = this.client.importEngine().tasks();
+        List<Future> tasks = new ArrayList<>(threadCount);
+        List<Long> shards = new ArrayList<>(this.buffers.keySet());
+        Collections.sort(shards);
+        final Map<Long, ShardBuffer> shardBuffers = new HashMap<>(this.buffers);
+        this.buffers.clear();
+        // the threads are shared with other imports, so a task for each import thread takes the next shard
+        final Queue<Long> pending = new ConcurrentLinkedQueue<>(shards);
+        try {
+            for (int i = 0; i < threadCount; i++) {
+                tasks.add(service.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        Long shard;
+                        while ((shard = pending.poll()) != null) {
+                            importShard(shard, shardBuffers.get(shard), sender);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future task : tasks) {
+                task.get();
+            }
+            sender.close();
+        } catch (InterruptedException e) {
+            service.cancel();
+            sender.abort();
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            service.cancel();
+            sender.abort();
+            throw new PilosaException("Error in import worker", e);
+        }
+    }
+
+    private void importShard(long shard, ShardBuffer buffer, ImportSender sender)
+            throws IOException, InterruptedException {
+        long[] slice = new long[this.sliceLongs];
+        ImportSender.Batch previous = null;
+        try (ShardBuffer.Reader reader = buffer.reader()) {
+            int length;
+            while ((length = reader.read(slice)) > 0) {
+                long tic = System.currentTimeMillis();
+                ShardRecords records;
+                if (this.recordLength == 2) {
+                    ShardFieldValues values = ShardFieldValues.create(this.field, shard, this.options);
+                    for (int i = 0; i < length; i += 2) {
+                        values.add(slice[i], slice[i + 1]);
+                    }
+                    records = values;
+                } else {
+                    ShardColumns columns = ShardColumns.create(this.field, shard, this.options.getShardWidth(), this.options);
+                    for (int i = 0; i < length; i += 3) {
+                        columns.add(slice[i], slice[i + 1], slice[i + 2]);
+                    }
+                    records = columns;
+                }
+                long encodeStart = System.nanoTime();
+                ImportRequest request = records.toImportRequest().encode(this.codec);
+                this.metrics.addEncodeTime(System.nanoTime() - encodeStart);
+                this.metrics.addShardRecords(shard, records.size());
+                List<String> hosts = this.client.importHosts(records);
+                // the requests of a shard are sent in order, so later values of a column win
+                if (previous != null) {
+                    previous.await();
+                }
+                previous = sender.send(Thread.currentThread().getId(), records, tic, hosts, request);
+            }
+        }
+    }
+
+    private static void deleteDirectory(Path directory) {
+        try {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            logger.warn("Could not delete the spill directory {}", directory, e);
+        }
+    }
+
+    /**
+     * Buffers the records of a shard, and appends them to its spill file.
+     */
+    private static final class ShardBuffer {
+        ShardBuffer(Path path) {
+            this.path = path;
+        }
+
+        void add(long a, long b) {
+            ensureCapacity(this.size + 2);
+            this.data[this.size++] = a;
+            this.data[this.size++] = b;
+        }
+
+        void add(long a, long b, long c) {
+            ensureCapacity(this.size + 3);
+            this.data[this.size++] = a;
+            this.data[this.size++] = b;
+            this.data[this.size++] = c;
+        }
+
+        void spill() {
+            if (this.size == 0) {
+                return;
+            }
+            // written in slices, so the byte size of the buffer never overflows
+            ByteBuffer bytes = ByteBuffer.allocate(Math.min(this.size, MAX_SLICE_LONGS) * 8);
+            try (FileChannel channel = FileChannel.open(this.path,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                for (int offset = 0; offset < this.size; ) {
+                    int count = Math.min(this.size - offset, MAX_SLICE_LONGS);
+                    bytes.clear();
+                    bytes.asLongBuffer().put(this.data, offset, count);
+                    bytes.limit(count * 8);
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes);
+                    }
+                    offset += count;
+                }
+            } catch (IOException e) {
+                throw new PilosaException("Error while writing the spill file", e);
+            }
+            this.spilledLongs += this.size;
+            // the buffer of a shard is released once it is spilled
+            this.data = EMPTY;
+            this.size = 0;
+        }
+
+        /**
+         * Returns a reader of the spilled records followed by the buffered records.
+         * Closing the reader deletes the spill file and releases the buffer.
+         */
+        Reader reader() throws IOException {
+            return new Reader();
+        }
+
+        final class Reader implements Closeable {
+            private Reader() throws IOException {
+                this.spilledLongs = ShardBuffer.this.spilledLongs;
+                if (this.spilledLongs > 0) {
+                    this.channel = FileChannel.open(path, StandardOpenOption.READ);
+                }
+            }
+
+            /**
+             * Reads the next records to the given array, whose length is a multiple of the record length.
+             *
+             * @return the number of longs read, 0 if there are no more records
+             */
+            int read(long[] dest) throws IOException {
+                if (this.spilledLongs > 0) {
+                    int count = (int) Math.min(dest.length, this.spilledLongs);
+                    if (this.bytes == null) {
+                        this.bytes = ByteBuffer.allocate(dest.length * 8);
+                    }
+                    this.bytes.clear();
+                    this.bytes.limit(count * 8);
+                    while (this.bytes.hasRemaining()) {
+                        if (this.channel.read(this.bytes) < 0) {
+                            throw new IOException("Unexpected end of the spill file " + path);
+                        }
+                    }
+                    this.bytes.flip();
+                    this.bytes.asLongBuffer().get(dest, 0, count);
+                    this.spilledLongs -= count;
+                    return count;
+                }
+                int count = Math.min(dest.length, size - this.offset);
+                System.arraycopy(data, this.offset, dest, 0, count);
+                this.offset += count;
+                return count;
+            }
+
+            @Override
+            public void close() throws IOException {
+                data = EMPTY;
+                size = 0;
+                if (this.channel != null) {
+                    this.channel.close();
+                    Files.deleteIfExists(path);
+                }
+            }
+
+            private long spilledLongs;
+            private FileChannel channel = null;
+            private ByteBuffer bytes = null;
+            private int offset = 0;
+        }
+
+        private void ensureCapacity(int capacity) {
+            int length = this.data.length;
+            if (capacity <= length) {
+                return;
+            }
+            long grown = Math.min(Integer.MAX_VALUE - 8, length + (long) (length >> 1));
+            this.data = Arrays.copyOf(this.data, (int) Math.max(Math.max(capacity, INITIAL_CAPACITY), grown));
+        }
+
+        private static final long[] EMPTY = new long[0];
+        private static final int INITIAL_CAPACITY = 48;
+        private final Path path;
+        private long[] data = EMPTY;
+        private int size = 0;
+        private long spilledLongs = 0;
+    }
+
+    // 256MB of buffered records, unless a memory budget is set
+    private static final long MAX_BUFFERED_LONGS = 32 * 1024 * 1024;
+    // 64MB read from a spill file at a time at most
+    private static final int MAX_SLICE_LONGS = 8 * 1024 * 1024;
+    private static final Logger logger = LoggerFactory.getLogger("pilosa");
+
+    private final PilosaClient client;
+    private final Field field;
+    private final ImportOptions options;
+    private final BlockingQueue<ImportStatusUpdate> statusQueue;
+    private final ImportMetricsCollector metrics;
+    private final int recordLength;
+    private final ContentCodec codec;
+    private final long maxBufferedLongs;
+    private final int sliceLongs;
+    private final Map<Long, ShardBuffer> buffers = new HashMap<>();
+    private int readCount = 0;
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+/**
+ * Computes the names of the time views of a timestamp.
+ * <p>
+ * View names are computed from the UTC calendar date of the timestamp without date formatting.
+ * The names of the last hour are cached, so records in the same hour share the same array of names.
+ * Not thread safe.
+ */
+final class TimeViews {
+    TimeViews(TimeQuantum timeQuantum) {
+        String quantum = timeQuantum.toString();
+        this.year = quantum.indexOf('Y');
+        this.month = quantum.indexOf('M');
+        this.day = quantum.indexOf('D');
+        this.hour = quantum.indexOf('H');
+        this.viewCount = quantum.length();
+    }
+
+    /**
+     * Returns the view names of the given timestamp, in the order of the time quantum.
+     * <p>
+     * The same array is returned until the hour of the timestamps changes. The returned array must not be modified.
+     *
+     * @param timestamp timestamp in nanoseconds since the epoch
+     * @return view names
+     */
+    String[] get(long timestamp) {
+        long hours = floorDiv(timestamp, NANOS_PER_HOUR);
+        if (this.names != null && hours == this.lastHour) {
+            return this.names;
+        }
+        long days = floorDiv(hours, 24);
+        String[] names = new String[this.viewCount];
+        if (this.names != null && days == this.lastDay) {
+            // only the hour view changes within a day
+            System.arraycopy(this.names, 0, names, 0, names.length);
+        } else {
+            civilDate(days);
+            this.lastDay = days;
+            if (this.year >= 0) {
+                names[this.year] = dateName(4);
+            }
+            if (this.month >= 0) {
+                names[this.month] = dateName(6);
+            }
+            if (this.day >= 0) {
+                names[this.day] = dateName(8);
+            }
+        }
+        if (this.hour >= 0) {
+            int hourOfDay = (int) (hours - days * 24);
+            names[this.hour] = new StringBuilder(10)
+                    .append(dateName(8))
+                    .append((char) ('0' + hourOfDay / 10))
+                    .append((char) ('0' + hourOfDay % 10))
+                    .toString();
+        }
+        this.lastHour = hours;
+        this.names = names;
+        return names;
+    }
+
+    /**
+     * Sets the year, month and day of the given number of days since the epoch.
+     * <p>
+     * See: http://howardhinnant.github.io/date_algorithms.html#civil_from_days
+     */
+    private void civilDate(long days) {
+        long z = days + 719468;
+        long era = floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        this.dayOfMonth = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        this.monthOfYear = (int) ((mp < 10) ? mp + 3 : mp - 9);
+        this.yearOfDate = yearOfEra + era * 400 + ((this.monthOfYear <= 2) ? 1 : 0);
+    }
+
+    /**
+     * Returns the first <code>length</code> characters of the yyyyMMdd representation of the last date.
+     */
+    private String dateName(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        String year = Long.toString(this.yearOfDate);
+        for (int i = year.length(); i < 4; i++) {
+            sb.append('0');
+        }
+        sb.append(year);
+        if (length > 4) {
+            sb.append((char) ('0' + this.monthOfYear / 10)).append((char) ('0' + this.monthOfYear % 10));
+        }
+        if (length > 6) {
+            sb.append((char) ('0' + this.dayOfMonth / 10)).append((char) ('0' + this.dayOfMonth % 10));
+        }
+        return sb.toString();
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            q--;
+        }
+        return q;
+    }
+
+    private static final long NANOS_PER_HOUR = 3600L * 1000000000L;
+
+    private final int year;
+    private final int month;
+    private final int day;
+    private final int hour;
+    private final int viewCount;
+    private String[] names = null;
+    private long lastHour;
+    private long lastDay;
+    private long yearOfDate;
+    private int monthOfYear;
+    private int dayOfMonth;
+}
@@ -34,8 +34,13 @@
 
 package com.pilosa.client;
 
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
 import com.pilosa.client.exceptions.PilosaException;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -45,6 +50,11 @@ final class Util {
     static final int PROTOBUF_INT_TYPE = 2;
     static final int PROTOBUF_BOOL_TYPE = 3;
     static final int PROTOBUF_DOUBLE_TYPE = 4;
+    // payloads smaller than this are sent uncompressed
+    static final int MIN_ENCODED_CONTENT_LENGTH = 1024;
+    // estimated heap sizes, used to account for the memory of buffered records
+    static final int REFERENCE_BYTES = 8;
+    static final int STRING_OVERHEAD_BYTES = 40;
 
     static Map<String, Object> protobufAttrsToMap(List<Internal.Attr> attrList) {
         Map<String, Object> attrs = new HashMap<>(attrList.size());
@@ -70,4 +80,76 @@ final class Util {
         }
         return attrs;
     }
+
+    /**
+     * Returns the estimated heap size of a string.
+     */
+    static long stringBytes(String s) {
+        return (s == null) ? 0 : STRING_OVERHEAD_BYTES + 2L * s.length();
+    }
+
+    /**
+     * Compresses the data with the given codec.
+     */
+    static byte[] encode(ContentCodec codec, byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+        try (OutputStream encoded = codec.encode(out)) {
+            encoded.write(data);
+        } catch (IOException ex) {
+            throw new PilosaException("Error while compressing the request", ex);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the encoded size of a packed repeated 64bit varint field, including its tag.
+     * The values are visited in the given order.
+     */
+    static int packedLongsSize(int fieldNumber, long[] values, int[] order, int size) {
+        if (size == 0) {
+            return 0;
+        }
+        int dataSize = packedLongsDataSize(values, order, size);
+        return CodedOutputStream.computeTagSize(fieldNumber)
+                + CodedOutputStream.computeUInt32SizeNoTag(dataSize)
+                + dataSize;
+    }
+
+    /**
+     * Writes a packed repeated 64bit varint field (uint64 or int64) without boxing the values.
+     */
+    static void writePackedLongs(CodedOutputStream out, int fieldNumber, long[] values, int[] order, int size)
+            throws IOException {
+        if (size == 0) {
+            return;
+        }
+        out.writeTag(fieldNumber, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        out.writeUInt32NoTag(packedLongsDataSize(values, order, size));
+        for (int i = 0; i < size; i++) {
+            out.writeUInt64NoTag(values[order[i]]);
+        }
+    }
+
+    static int stringsSize(int fieldNumber, String[] values, int[] order, int size) {
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            total += CodedOutputStream.computeStringSize(fieldNumber, values[order[i]]);
+        }
+        return total;
+    }
+
+    static void writeStrings(CodedOutputStream out, int fieldNumber, String[] values, int[] order, int size)
+            throws IOException {
+        for (int i = 0; i < size; i++) {
+            out.writeString(fieldNumber, values[order[i]]);
+        }
+    }
+
+    private static int packedLongsDataSize(long[] values, int[] order, int size) {
+        int dataSize = 0;
+        for (int i = 0; i < size; i++) {
+            dataSize += CodedOutputStream.computeUInt64SizeNoTag(values[order[i]]);
+        }
+        return dataSize;
+    }
 }
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import com.pilosa.client.orm.Record;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
+import java.util.Arrays;
+
+/**
+ * A column with values for several fields of an index.
+ * <p>
+ * Wide records are imported with {@link PilosaClient#importIndex}. The values are addressed by
+ * the position of their field in the field list of the import. A field may have at most one value
+ * in a record; fields without a value are skipped.
+ */
+public final class WideRecord implements Record {
+    /**
+     * Creates a record for the column with the given ID.
+     *
+     * @param columnID   column ID
+     * @param fieldCount number of fields in the import
+     * @return the record
+     */
+    public static WideRecord create(long columnID, int fieldCount) {
+        return new WideRecord(columnID, "", fieldCount);
+    }
+
+    /**
+     * Creates a record for the column with the given key.
+     *
+     * @param columnKey  column key
+     * @param fieldCount number of fields in the import
+     * @return the record
+     */
+    public static WideRecord create(String columnKey, int fieldCount) {
+        return new WideRecord(0, columnKey, fieldCount);
+    }
+
+    /**
+     * Sets the row ID of a set, mutex or time field.
+     *
+     * @param field position of the field
+     * @param rowID row ID
+     * @return this record
+     */
+    public WideRecord setRowID(int field, long rowID) {
+        this.values[field] = rowID;
+        this.present[field] = true;
+        return this;
+    }
+
+    /**
+     * Sets the row key of a field with keys.
+     *
+     * @param field  position of the field
+     * @param rowKey row key
+     * @return this record
+     */
+    public WideRecord setRowKey(int field, String rowKey) {
+        if (this.rowKeys == null) {
+            this.rowKeys = new String[this.values.length];
+        }
+        this.rowKeys[field] = rowKey;
+        this.present[field] = true;
+        return this;
+    }
+
+    /**
+     * Sets the value of a bool field.
+     *
+     * @param field   position of the field
+     * @param rowBool value
+     * @return this record
+     */
+    public WideRecord setRowBool(int field, boolean rowBool) {
+        return setRowID(field, rowBool ? 1 : 0);
+    }
+
+    /**
+     * Sets the value of an int field.
+     *
+     * @param field position of the field
+     * @param value value
+     * @return this record
+     */
+    public WideRecord setValue(int field, long value) {
+        this.values[field] = value;
+        this.present[field] = true;
+        return this;
+    }
+
+    /**
+     * Sets the timestamp of the record, which is used for time fields.
+     *
+     * @param timestamp timestamp in seconds since the epoch
+     * @return this record
+     */
+    public WideRecord setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+        return this;
+    }
+
+    public long getColumnID() {
+        return this.columnID;
+    }
+
+    public String getColumnKey() {
+        return this.columnKey;
+    }
+
+    public long getTimestamp() {
+        return this.timestamp;
+    }
+
+    public int getFieldCount() {
+        return this.values.length;
+    }
+
+    /**
+     * Returns whether the field has a value in this record.
+     *
+     * @param field position of the field
+     * @return true if the field has a value
+     */
+    public boolean hasValue(int field) {
+        return this.present[field];
+    }
+
+    public long getRowID(int field) {
+        return this.values[field];
+    }
+
+    public String getRowKey(int field) {
+        return (this.rowKeys == null || this.rowKeys[field] == null) ? "" : this.rowKeys[field];
+    }
+
+    public long getValue(int field) {
+        return this.values[field];
+    }
+
+    @Override
+    public long shard(long shardWidth) {
+        return this.columnID / shardWidth;
+    }
+
+    @Override
+    public boolean isDefault() {
+        return false;
+    }
+
+    @Override
+    public int compareTo(Record other) {
+        WideRecord record = (WideRecord) other;
+        if (this.columnID == record.columnID) {
+            return 0;
+        }
+        return (this.columnID < record.columnID) ? -1 : 1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof WideRecord)) {
+            return false;
+        }
+        WideRecord record = (WideRecord) o;
+        return this.columnID == record.columnID &&
+                this.columnKey.equals(record.columnKey) &&
+                this.timestamp == record.timestamp &&
+                Arrays.equals(this.values, record.values) &&
+                Arrays.equals(this.rowKeys, record.rowKeys) &&
+                Arrays.equals(this.present, record.present);
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder(31, 47)
+                .append(this.columnID)
+                .append(this.columnKey)
+                .append(this.timestamp)
+                .append(this.values)
+                .append(this.rowKeys)
+                .append(this.present)
+                .toHashCode();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d %s [%d] values:%s row keys:%s", this.columnID, this.columnKey, this.timestamp,
+                Arrays.toString(this.values), Arrays.toString(this.rowKeys));
+    }
+
+    /**
+     * Adds the value of the given field to the records of the field.
+     */
+    void addTo(int field, ShardRecords records) {
+        if (records instanceof ShardFieldValues) {
+            ((ShardFieldValues) records).add(this.columnID, this.columnKey, this.values[field]);
+        } else {
+            ((ShardColumns) records).add(this.values[field], getRowKey(field),
+                    this.columnID, this.columnKey, this.timestamp);
+        }
+    }
+
+    private WideRecord(long columnID, String columnKey, int fieldCount) {
+        this.columnID = columnID;
+        this.columnKey = columnKey;
+        this.values = new long[fieldCount];
+        this.present = new boolean[fieldCount];
+    }
+
+    final long columnID;
+    final String columnKey;
+    private long timestamp = 0;
+    private final long[] values;
+    private final boolean[] present;
+    private String[] rowKeys = null;
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client.csv;
+
+import com.pilosa.client.WideRecord;
+import com.pilosa.client.WideRecordIterator;
+import com.pilosa.client.exceptions.PilosaException;
+import com.pilosa.client.orm.Field;
+import com.pilosa.client.orm.FieldOptions;
+import com.pilosa.client.orm.FieldType;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.TimeZone;
+
+/**
+ * Reads wide records from CSV or TSV files.
+ * <p>
+ * Each line contains a column ID or key, followed by one cell for each field, in the order of the fields.
+ * An empty cell means the field has no value for the column. A timestamp may follow the field cells.
+ * The cell of an int field is the value, the cell of a bool field is 1 or 0 (or true or false),
+ * and the cell of other fields is a row ID or key.
+ */
+public class WideFileRecordIterator implements WideRecordIterator {
+    public static WideFileRecordIterator fromPath(String path, List<Field> fields) throws FileNotFoundException {
+        return fromStream(new FileInputStream(path), fields, ',');
+    }
+
+    public static WideFileRecordIterator fromPath(String path, List<Field> fields, char delimiter)
+            throws FileNotFoundException {
+        return fromStream(new FileInputStream(path), fields, delimiter);
+    }
+
+    public static WideFileRecordIterator fromStream(InputStream stream, List<Field> fields) {
+        return fromStream(stream, fields, ',');
+    }
+
+    public static WideFileRecordIterator fromStream(InputStream stream, List<Field> fields, char delimiter) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+        return new WideFileRecordIterator(reader, fields, delimiter);
+    }
+
+    public void setTimestampFormat(SimpleDateFormat format) {
+        this.timestampFormat = format;
+        if (this.timestampFormat != null) {
+            this.timestampFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (this.nextRecord != null) {
+            return true;
+        }
+        if (this.reader == null) {
+            return false;
+        }
+        String line;
+        try {
+            line = this.reader.readLine();
+        } catch (IOException ex) {
+            throw new PilosaException("Error while reading records", ex);
+        }
+        if (line == null || line.isEmpty()) {
+            close();
+            return false;
+        }
+        this.nextRecord = parse(line);
+        return true;
+    }
+
+    @Override
+    public WideRecord next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        WideRecord record = this.nextRecord;
+        this.nextRecord = null;
+        return record;
+    }
+
+    @Override
+    public void remove() {
+        // JDK 7 compatibility
+    }
+
+    private WideRecord parse(String line) {
+        int fieldCount = this.kinds.length;
+        List<String> cells = split(line);
+        if (cells.size() < fieldCount + 1) {
+            throw new PilosaException(String.format("Expected %d cells, got: %s", fieldCount + 1, line));
+        }
+        String column = cells.get(0);
+        WideRecord record = this.columnKeys ?
+                WideRecord.create(column, fieldCount)
+                : WideRecord.create(Long.parseLong(column), fieldCount);
+        for (int i = 0; i < fieldCount; i++) {
+            String cell = cells.get(i + 1);
+            if (cell.isEmpty()) {
+                continue;
+            }
+            switch (this.kinds[i]) {
+                case VALUE:
+                    record.setValue(i, Long.parseLong(cell));
+                    break;
+                case BOOL:
+                    record.setRowBool(i, "1".equals(cell) || "true".equalsIgnoreCase(cell));
+                    break;
+                case ROW_KEY:
+                    record.setRowKey(i, cell);
+                    break;
+                default:
+                    record.setRowID(i, Long.parseLong(cell));
+            }
+        }
+        if (cells.size() > fieldCount + 1) {
+            record.setTimestamp(parseTimestamp(cells.get(fieldCount + 1)));
+        }
+        return record;
+    }
+
+    private List<String> split(String line) {
+        List<String> cells = this.cells;
+        cells.clear();
+        int start = 0;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == this.delimiter) {
+                cells.add(line.substring(start, i));
+                start = i + 1;
+            }
+        }
+        cells.add(line.substring(start));
+        return cells;
+    }
+
+    private long parseTimestamp(final String s) {
+        if (this.timestampFormat == null) {
+            return Long.parseLong(s);
+        }
+        try {
+            Date date = this.timestampFormat.parse(s);
+            return date.getTime() / 1000;
+        } catch (ParseException ex) {
+            throw new PilosaException(String.format("Error parsing timestamp: %s", s), ex);
+        }
+    }
+
+    private void close() {
+        try {
+            this.reader.close();
+        } catch (IOException ex) {
+            // ignore errors while closing the file
+        }
+        this.reader = null;
+    }
+
+    private WideFileRecordIterator(BufferedReader reader, List<Field> fields, char delimiter) {
+        this.reader = reader;
+        this.delimiter = delimiter;
+        this.columnKeys = fields.get(0).getIndex().getOptions().isKeys();
+        this.kinds = new CellKind[fields.size()];
+        for (int i = 0; i < this.kinds.length; i++) {
+            FieldOptions options = fields.get(i).getOptions();
+            if (options.getFieldType() == FieldType.INT) {
+                this.kinds[i] = CellKind.VALUE;
+            } else if (options.getFieldType() == FieldType.BOOL) {
+                this.kinds[i] = CellKind.BOOL;
+            } else if (options.isKeys()) {
+                this.kinds[i] = CellKind.ROW_KEY;
+            } else {
+                this.kinds[i] = CellKind.ROW_ID;
+            }
+        }
+        setTimestampFormat(new SimpleDateFormat("yyyy-MM-dd'T'hh:mm:ss"));
+    }
+
+    private enum CellKind {
+        ROW_ID,
+        ROW_KEY,
+        BOOL,
+        VALUE
+    }
+
+    private final char delimiter;
+    private final boolean columnKeys;
+    private final CellKind[] kinds;
+    private final List<String> cells = new ArrayList<>();
+    private BufferedReader reader;
+    private SimpleDateFormat timestampFormat = null;
+    private WideRecord nextRecord = null;
+}
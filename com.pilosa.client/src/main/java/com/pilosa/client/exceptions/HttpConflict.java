@@ -34,5 +34,8 @@
 
 package com.pilosa.client.exceptions;
 
-public class HttpConflict extends PilosaException {
+public class HttpConflict extends HttpError {
+    public HttpConflict() {
+        super(409, null);
+    }
 }
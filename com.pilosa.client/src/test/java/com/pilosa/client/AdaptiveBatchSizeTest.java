@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@Category(UnitTest.class)
+public class AdaptiveBatchSizeTest {
+    @Test
+    public void growTest() {
+        AdaptiveBatchSize batchSize = new AdaptiveBatchSize(options(10000, 1000, 100000));
+        assertEquals(10000, batchSize.get());
+        // a full batch within the target latency grows the batch size by a step
+        batchSize.observe(10000, 0, 50);
+        assertEquals(11000, batchSize.get());
+        for (int i = 0; i < 1000; i++) {
+            batchSize.observe(batchSize.get(), i, 50);
+        }
+        assertEquals(100000, batchSize.get());
+    }
+
+    @Test
+    public void shrinkTest() {
+        AdaptiveBatchSize batchSize = new AdaptiveBatchSize(options(10000, 1000, 100000));
+        batchSize.observe(10000, 100, 500);
+        assertEquals(5000, batchSize.get());
+        // batches which started before the decrease completed don't shrink the batch size again
+        batchSize.observe(10000, 200, 500);
+        assertEquals(5000, batchSize.get());
+        batchSize.observe(5000, 700, 500);
+        assertEquals(2500, batchSize.get());
+        for (int i = 0; i < 10; i++) {
+            batchSize.observe(1000, 10000 * (i + 1), 500);
+        }
+        assertEquals(1000, batchSize.get());
+    }
+
+    @Test
+    public void smallBatchesTest() {
+        AdaptiveBatchSize batchSize = new AdaptiveBatchSize(options(10000, 1000, 100000));
+        // batches much smaller than the batch size still grow it
+        batchSize.observe(1, 0, 10);
+        assertTrue(batchSize.get() > 10000);
+    }
+
+    private static ImportOptions options(int batchSize, int min, int max) {
+        return ImportOptions.builder()
+                .setBatchSize(batchSize)
+                .setTargetLatencyMs(100)
+                .setMinBatchSize(min)
+                .setMaxBatchSize(max)
+                .build();
+    }
+}
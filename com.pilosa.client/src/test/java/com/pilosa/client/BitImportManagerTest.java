@@ -0,0 +1,624 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+package com.pilosa.client;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.pilosa.client.exceptions.PilosaException;
+import com.pilosa.client.orm.Field;
+import com.pilosa.client.orm.FieldOptions;
+import com.pilosa.client.orm.Index;
+import com.pilosa.client.orm.Record;
+import com.pilosa.client.orm.Schema;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+@Category(UnitTest.class)
+public class BitImportManagerTest {
+    @Test
+    public void workerIndexByShardTest() {
+        long shardWidth = ClientOptions.DEFAULT_SHARD_WIDTH;
+        assertEquals(0, BitImportManager.workerIndex(Column.create(1, 5), shardWidth, 4, false));
+        assertEquals(3, BitImportManager.workerIndex(Column.create(1, 3 * shardWidth), shardWidth, 4, false));
+        assertEquals(1, BitImportManager.workerIndex(FieldValue.create(5 * shardWidth, 10), shardWidth, 4, false));
+    }
+
+    @Test
+    public void workerIndexByKeyTest() {
+        long shardWidth = ClientOptions.DEFAULT_SHARD_WIDTH;
+        int threadCount = 8;
+        boolean[] used = new boolean[threadCount];
+        for (int i = 0; i < 1000; i++) {
+            int worker = BitImportManager.workerIndex(Column.create(1, "column" + i), shardWidth, threadCount, true);
+            assertTrue(worker >= 0 && worker < threadCount);
+            used[worker] = true;
+            // the same key always goes to the same worker
+            assertEquals(worker, BitImportManager.workerIndex(FieldValue.create("column" + i, 5), shardWidth, threadCount, true));
+        }
+        for (boolean u : used) {
+            assertTrue(u);
+        }
+    }
+
+    @Test
+    public void importIndexTest() throws Exception {
+        Index index = Schema.defaultSchema().index("i");
+        Field color = index.field("color");
+        Field size = index.field("size", FieldOptions.builder().fieldInt(0, 100).build());
+        RecordingClient client = new RecordingClient();
+        long shardWidth = ClientOptions.DEFAULT_SHARD_WIDTH;
+        List<WideRecord> records = Arrays.asList(
+                WideRecord.create(1, 2).setRowID(0, 10).setValue(1, 42),
+                WideRecord.create(2, 2).setRowID(0, 11),
+                WideRecord.create(shardWidth + 1, 2).setValue(1, 7)
+        );
+        ImportOptions options = ImportOptions.builder().setThreadCount(2).build();
+        client.importIndex(index, Arrays.asList(color, size), wideIterator(records), options);
+
+        assertEquals(3, client.requests.size());
+        List<Internal.ImportRequest> colorRequests = client.bitRequests("color");
+        assertEquals(1, colorRequests.size());
+        assertEquals(0, colorRequests.get(0).getShard());
+        assertEquals(Arrays.asList(1L, 2L), colorRequests.get(0).getColumnIDsList());
+        assertEquals(Arrays.asList(10L, 11L), colorRequests.get(0).getRowIDsList());
+        Map<Long, List<Long>> sizeColumns = new HashMap<>();
+        for (Internal.ImportValueRequest r : client.valueRequests("size")) {
+            sizeColumns.put(r.getShard(), r.getColumnIDsList());
+        }
+        assertEquals(Collections.singletonList(1L), sizeColumns.get(0L));
+        assertEquals(Collections.singletonList(shardWidth + 1), sizeColumns.get(1L));
+    }
+
+    @Test
+    public void importSortedTest() throws Exception {
+        Field field = Schema.defaultSchema().index("i").field("f");
+        RecordingClient client = new RecordingClient();
+        long shardWidth = ClientOptions.DEFAULT_SHARD_WIDTH;
+        List<Record> records = Arrays.<Record>asList(
+                Column.create(1, 1),
+                Column.create(1, 2),
+                Column.create(1, shardWidth),
+                Column.create(2, shardWidth),
+                Column.create(1, 2 * shardWidth)
+        );
+        ImportOptions options = ImportOptions.builder().setSorted(true).setMaxInFlightPerNode(1).build();
+        client.importField(field, iterator(records), options);
+        // each shard is imported once the records move past it
+        List<Long> shards = new ArrayList<>();
+        for (Internal.ImportRequest r : client.bitRequests("f")) {
+            shards.add(r.getShard());
+        }
+        assertEquals(Arrays.asList(0L, 1L, 2L), shards);
+    }
+
+    @Test
+    public void importWithMemoryBudgetTest() throws Exception {
+        Field field = Schema.defaultSchema().index("i").field("f");
+        int recordCount = 100000;
+        RecordingClient unlimited = new RecordingClient();
+        unlimited.importField(field, iterator(columns(recordCount, 16, 0)),
+                ImportOptions.builder().setThreadCount(4).build());
+        // the budget holds only a few thousand columns, so the shards are imported early
+        RecordingClient limited = new RecordingClient();
+        ImportOptions options = ImportOptions.builder()
+                .setThreadCount(4)
+                .setMemoryBudget(100000)
+                .build();
+        limited.importField(field, iterator(columns(recordCount, 16, 0)), options);
+        assertEquals(recordCount, columnCount(limited.bitRequests("f")));
+        assertEquals(recordCount, columnCount(unlimited.bitRequests("f")));
+        // without the budget, each shard is imported in a single request
+        assertEquals(16, unlimited.requests.size());
+        assertTrue(limited.requests.size() > 4 * unlimited.requests.size());
+        assertTrue(maxColumnCount(limited.bitRequests("f")) < maxColumnCount(unlimited.bitRequests("f")) / 2);
+    }
+
+    @Test
+    public void importMetricsTest() throws Exception {
+        Field field = Schema.defaultSchema().index("i").field("f");
+        RecordingClient client = new RecordingClient() {
+            @Override
+            List<String> importHosts(String indexName, long shard) {
+                return Arrays.asList("node0", "node1");
+            }
+        };
+        final List<ImportMetrics> updates = Collections.synchronizedList(new ArrayList<ImportMetrics>());
+        ImportOptions options = ImportOptions.builder()
+                .setThreadCount(2)
+                .setMetricsListener(new ImportMetricsListener() {
+                    @Override
+                    public void metricsUpdated(ImportMetrics metrics) {
+                        updates.add(metrics);
+                    }
+                })
+                .build();
+        client.importField(field, iterator(columns(100, 4, 0)), options);
+        // the final metrics are reported on the reporting thread of the client, after the import returns
+        client.importEngine().reporter().submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get();
+
+        // the last update has the final metrics
+        ImportMetrics metrics = updates.get(updates.size() - 1);
+        assertEquals(100, metrics.getReadCount());
+        assertEquals(100, metrics.getImportedCount());
+        assertEquals(4, metrics.getShardCount());
+        assertEquals(1.0, metrics.getShardSkew(), 0.001);
+        assertEquals(8, metrics.getLatency().getCount());
+        assertEquals(2, metrics.getNodes().size());
+        assertEquals(100, metrics.getNodes().get("node0").getRecordCount());
+        assertEquals(100, metrics.getNodes().get("node1").getRecordCount());
+    }
+
+    @Test
+    public void importFromSeveralIteratorsTest() throws Exception {
+        Field field = Schema.defaultSchema().index("i").field("f");
+        RecordingClient client = new RecordingClient();
+        int recordCount = 25000;
+        List<RecordIterator> iterators = new ArrayList<>();
+        for (int producer = 0; producer < 4; producer++) {
+            // every producer spans every shard
+            iterators.add(iterator(columns(recordCount, 16, producer * recordCount)));
+        }
+        ImportOptions options = ImportOptions.builder()
+                .setThreadCount(3)
+                .setBatchSize(10000)
+                .build();
+        client.importField(field, iterators, options);
+        Set<Long> columns = new HashSet<>();
+        for (Internal.ImportRequest r : client.bitRequests("f")) {
+            columns.addAll(r.getColumnIDsList());
+        }
+        assertEquals(4 * recordCount, columns.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void importFromFailingIteratorTest() throws Exception {
+        Field field = Schema.defaultSchema().index("i").field("f");
+        RecordIterator failing = new RecordIterator() {
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Column next() {
+                throw new IllegalStateException("cannot read");
+            }
+
+            @Override
+            public void remove() {
+            }
+        };
+        RecordIterator empty = iterator(Collections.<Record>emptyList());
+        new RecordingClient().importField(field, Arrays.asList(empty, failing), ImportOptions.builder().build());
+    }
+
+    @Test
+    public void importCursorTest() throws Exception {
+        Index index = Schema.defaultSchema().index("i");
+        Field field = index.field("f");
+        Field size = index.field("size", FieldOptions.builder().fieldInt(-1000, 1000000).build());
+        RecordingClient client = new RecordingClient();
+        long shardWidth = ClientOptions.DEFAULT_SHARD_WIDTH;
+        int recordCount = 10000;
+        ImportOptions options = ImportOptions.builder()
+                .setThreadCount(3)
+                .setBatchSize(1000)
+                .build();
+        client.importField(field, new CountingCursor(recordCount, shardWidth), options);
+        client.importField(size, new CountingCursor(recordCount, shardWidth), options);
+        Map<Long, Long> columns = new HashMap<>();
+        for (Internal.ImportRequest r : client.bitRequests("f")) {
+            for (int i = 0; i < r.getColumnIDsCount(); i++) {
+                columns.put(r.getColumnIDs(i), r.getRowIDs(i));
+            }
+        }
+        Map<Long, Long> values = new HashMap<>();
+        for (Internal.ImportValueRequest r : client.valueRequests("size")) {
+            for (int i = 0; i < r.getColumnIDsCount(); i++) {
+                values.put(r.getColumnIDs(i), r.getValues(i));
+            }
+        }
+        assertEquals(recordCount, columns.size());
+        assertEquals(recordCount, values.size());
+        for (long i = 0; i < recordCount; i++) {
+            long column = (i % 16) * shardWidth + i;
+            assertEquals(Long.valueOf(i % 7), columns.get(column));
+            assertEquals(Long.valueOf(i - 500), values.get(column));
+        }
+    }
+
+    @Test
+    public void resumeImportTest() throws Exception {
+        Field field = Schema.defaultSchema().index("i").field("f");
+        final long shardWidth = ClientOptions.DEFAULT_SHARD_WIDTH;
+        final int recordCount = 10000;
+        final Set<Long> imported = Collections.synchronizedSet(new HashSet<Long>());
+        final AtomicInteger failAfter = new AtomicInteger(5000);
+        RecordingClient client = new RecordingClient(ClientOptions.builder().setRetryCount(0).build()) {
+            @Override
+            void received(String hostUri, ImportRequest request) throws Exception {
+                List<Long> columns = Internal.ImportRequest.parseFrom(request.getPayload()).getColumnIDsList();
+                if (imported.size() + columns.size() > failAfter.get()) {
+                    throw new PilosaException("node is down");
+                }
+                for (long column : columns) {
+                    // the column IDs are unique within the shard
+                    assertTrue(imported.add(column % shardWidth));
+                }
+            }
+        };
+        final long[] checkpoint = new long[1];
+        ImportCheckpointStore store = new ImportCheckpointStore() {
+            @Override
+            public long load() {
+                return checkpoint[0];
+            }
+
+            @Override
+            public void save(long position) {
+                checkpoint[0] = position;
+            }
+        };
+        ImportOptions options = ImportOptions.builder()
+                .setThreadCount(2)
+                .setCheckpointStore(store)
+                .setCheckpointInterval(1000)
+                .build();
+        try {
+            client.importField(field, new CountingCursor(recordCount, shardWidth), options);
+            fail("expected the import to fail");
+        } catch (PilosaException e) {
+            // expected
+        }
+        long position = checkpoint[0];
+        assertTrue(position > 0 && position <= 5000);
+        assertEquals(0, position % 1000);
+        for (long i = 0; i < position; i++) {
+            assertTrue(imported.contains(i));
+        }
+
+        // resuming skips the records before the checkpoint
+        imported.clear();
+        failAfter.set(recordCount);
+        options = ImportOptions.builder()
+                .setThreadCount(2)
+                .setCheckpointStore(store)
+                .setCheckpointInterval(1000)
+                .setResume(true)
+                .build();
+        client.importField(field, new CountingCursor(recordCount, shardWidth), options);
+        assertEquals(recordCount - position, imported.size());
+        for (long i = position; i < recordCount; i++) {
+            assertTrue(imported.contains(i));
+        }
+        assertEquals(recordCount, checkpoint[0]);
+    }
+
+    @Test
+    public void importWithNodeSchedulingTest() throws Exception {
+        Field size = Schema.defaultSchema().index("i").field("size", FieldOptions.builder().fieldInt(0, 1000000).build());
+        long shardWidth = ClientOptions.DEFAULT_SHARD_WIDTH;
+        RecordingClient client = new RecordingClient() {
+            @Override
+            List<String> importHosts(String indexName, long shard) {
+                return Collections.singletonList("node" + (shard % 2));
+            }
+
+            @Override
+            void received(String hostUri, ImportRequest request) throws Exception {
+                if (hostUri.equals("node1")) {
+                    // a slow node shouldn't hold back the other one
+                    Thread.sleep(2);
+                }
+            }
+        };
+        // each column is written several times with increasing values
+        int recordCount = 20000;
+        List<Record> records = new ArrayList<>(recordCount);
+        for (int i = 0; i < recordCount; i++) {
+            records.add(FieldValue.create((i % 8) * shardWidth + (i % 400), i));
+        }
+        ImportOptions options = ImportOptions.builder()
+                .setThreadCount(3)
+                .setBatchSize(100)
+                .setNodeScheduling(true)
+                .build();
+        client.importField(size, iterator(records), options);
+        // the requests of a shard are recorded in the order they were sent
+        Map<Long, Long> values = new HashMap<>();
+        for (Internal.ImportValueRequest r : client.valueRequests("size")) {
+            for (int i = 0; i < r.getColumnIDsCount(); i++) {
+                Long previous = values.put(r.getColumnIDs(i), r.getValues(i));
+                assertTrue(previous == null || previous < r.getValues(i));
+            }
+        }
+        assertEquals(400, values.size());
+        for (int i = recordCount - 400; i < recordCount; i++) {
+            assertEquals(Long.valueOf(i), values.get((i % 8) * shardWidth + (i % 400)));
+        }
+    }
+
+    @Test
+    public void concurrentImportsShareRequestBudgetTest() throws Exception {
+        Index index = Schema.defaultSchema().index("i");
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        RecordingClient client = new RecordingClient(ClientOptions.builder().setConnectionPoolTotalSize(2).build()) {
+            @Override
+            List<String> importHosts(String indexName, long shard) {
+                return Collections.singletonList("node" + (shard % 2));
+            }
+
+            @Override
+            void received(String hostUri, ImportRequest request) throws Exception {
+                int n = inFlight.incrementAndGet();
+                synchronized (maxInFlight) {
+                    maxInFlight.set(Math.max(maxInFlight.get(), n));
+                }
+                try {
+                    Thread.sleep(1);
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            }
+        };
+        int recordCount = 2000;
+        ImportOptions options = ImportOptions.builder()
+                .setThreadCount(2)
+                .setBatchSize(100)
+                .build();
+        List<ImportHandle> handles = new ArrayList<>();
+        for (int f = 0; f < 3; f++) {
+            handles.add(client.importFieldAsync(index.field("f" + f), iterator(columns(recordCount, 4, 0)), options, null));
+        }
+        for (ImportHandle handle : handles) {
+            handle.get();
+        }
+        // the imports don't send more requests at once than the connection pool of the client holds
+        assertTrue(maxInFlight.get() <= 2);
+        for (int f = 0; f < 3; f++) {
+            Set<Long> columns = new HashSet<>();
+            for (Internal.ImportRequest r : client.bitRequests("f" + f)) {
+                columns.addAll(r.getColumnIDsList());
+            }
+            assertEquals(recordCount, columns.size());
+        }
+    }
+
+    @Test
+    public void interruptedWhileWaitingForImportThreadTest() throws Exception {
+        final Field field = Schema.defaultSchema().index("i").field("f");
+        final RecordingClient client = new RecordingClient(ClientOptions.builder().setImportThreadCount(1).build());
+        ImportEngine engine = client.importEngine();
+        // another import holds the only import thread
+        engine.acquireWorkers(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    client.importField(field, iterator(columns(10, 1, 0)), ImportOptions.builder().build());
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            }
+        });
+        thread.start();
+        Thread.sleep(50);
+        thread.interrupt();
+        thread.join();
+        engine.releaseWorkers(1);
+        // the caller sees the import was aborted
+        assertTrue(error.get() instanceof PilosaException);
+        assertTrue(error.get().getCause() instanceof InterruptedException);
+        assertTrue(client.requests.isEmpty());
+    }
+
+    private static int columnCount(List<Internal.ImportRequest> requests) {
+        int count = 0;
+        for (Internal.ImportRequest r : requests) {
+            count += r.getColumnIDsCount();
+        }
+        return count;
+    }
+
+    private static int maxColumnCount(List<Internal.ImportRequest> requests) {
+        int count = 0;
+        for (Internal.ImportRequest r : requests) {
+            count = Math.max(count, r.getColumnIDsCount());
+        }
+        return count;
+    }
+
+    // returns columns over the given number of shards, starting from the given offset
+    private static List<Record> columns(int count, int shards, long offset) {
+        long shardWidth = ClientOptions.DEFAULT_SHARD_WIDTH;
+        List<Record> columns = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            columns.add(Column.create(1, (i % shards) * shardWidth + offset + i));
+        }
+        return columns;
+    }
+
+    private static RecordIterator iterator(List<Record> records) {
+        final Iterator<Record> it = records.iterator();
+        return new RecordIterator() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public Record next() {
+                return it.next();
+            }
+
+            @Override
+            public void remove() {
+            }
+        };
+    }
+
+    private static WideRecordIterator wideIterator(List<WideRecord> records) {
+        final Iterator<WideRecord> it = records.iterator();
+        return new WideRecordIterator() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public WideRecord next() {
+                return it.next();
+            }
+
+            @Override
+            public void remove() {
+            }
+        };
+    }
+
+    // records the import requests, which are all sent to node0 unless importHosts is overridden
+    private static class RecordingClient extends PilosaClient {
+        RecordingClient() {
+            this(ClientOptions.builder().build());
+        }
+
+        RecordingClient(ClientOptions options) {
+            super(URI.defaultURI(), options);
+        }
+
+        @Override
+        List<String> importHosts(ShardRecords records) {
+            return importHosts(records.getIndexName(), records.getShard());
+        }
+
+        @Override
+        List<String> importHosts(String indexName, long shard) {
+            return Collections.singletonList("node0");
+        }
+
+        @Override
+        void importNode(String hostUri, ImportRequest request) {
+            try {
+                received(hostUri, request);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            this.requests.add(request);
+        }
+
+        // called for each request before it is recorded, may fail the request
+        void received(String hostUri, ImportRequest request) throws Exception {
+        }
+
+        List<Internal.ImportRequest> bitRequests(String fieldName) throws InvalidProtocolBufferException {
+            List<Internal.ImportRequest> result = new ArrayList<>();
+            for (ImportRequest request : fieldRequests(fieldName)) {
+                result.add(Internal.ImportRequest.parseFrom(request.getPayload()));
+            }
+            return result;
+        }
+
+        List<Internal.ImportValueRequest> valueRequests(String fieldName) throws InvalidProtocolBufferException {
+            List<Internal.ImportValueRequest> result = new ArrayList<>();
+            for (ImportRequest request : fieldRequests(fieldName)) {
+                result.add(Internal.ImportValueRequest.parseFrom(request.getPayload()));
+            }
+            return result;
+        }
+
+        private List<ImportRequest> fieldRequests(String fieldName) {
+            List<ImportRequest> result = new ArrayList<>();
+            synchronized (this.requests) {
+                for (ImportRequest request : this.requests) {
+                    if (request.getPath().contains("/field/" + fieldName + "/")) {
+                        result.add(request);
+                    }
+                }
+            }
+            return result;
+        }
+
+        final List<ImportRequest> requests = Collections.synchronizedList(new ArrayList<ImportRequest>());
+    }
+
+    // returns records over 16 shards, with the row ID i % 7 and the value i - 500
+    private static class CountingCursor implements RecordCursor {
+        CountingCursor(int count, long shardWidth) {
+            this.count = count;
+            this.shardWidth = shardWidth;
+        }
+
+        @Override
+        public boolean advance() {
+            return ++this.i < this.count;
+        }
+
+        @Override
+        public long rowID() {
+            return this.i % 7;
+        }
+
+        @Override
+        public long columnID() {
+            return (this.i % 16) * this.shardWidth + this.i;
+        }
+
+        @Override
+        public long timestamp() {
+            return 0;
+        }
+
+        @Override
+        public long value() {
+            return this.i - 500;
+        }
+
+        private final int count;
+        private final long shardWidth;
+        private long i = -1;
+    }
+}
@@ -43,6 +43,7 @@ import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 @Category(UnitTest.class)
 public class ClientOptionsTest {
@@ -54,11 +55,15 @@ public class ClientOptionsTest {
         assertEquals(30000, options.getConnectTimeout());
         assertEquals(300000, options.getSocketTimeout());
         assertEquals(3, options.getRetryCount());
+        assertEquals(100000, options.getKeyCacheSize());
+        assertNull(options.getRequestCodec());
+        assertEquals(2 * Runtime.getRuntime().availableProcessors(), options.getImportThreadCount());
     }
 
     @Test
     public void testCreate() throws KeyManagementException, NoSuchAlgorithmException {
         SSLContext sslContext = new SSLContextBuilder().build();
+        ContentCodec codec = new GzipCodec();
         ClientOptions options = ClientOptions.builder()
                 .setConnectionPoolSizePerRoute(2)
                 .setConnectionPoolTotalSize(50)
@@ -67,6 +72,9 @@ public class ClientOptionsTest {
                 .setRetryCount(5)
                 .setSslContext(sslContext)
                 .setShardWidth(1024)
+                .setKeyCacheSize(500)
+                .setRequestCodec(codec)
+                .setImportThreadCount(8)
                 .build();
         assertEquals(2, options.getConnectionPoolSizePerRoute());
         assertEquals(50, options.getConnectionPoolTotalSize());
@@ -75,5 +83,8 @@ public class ClientOptionsTest {
         assertEquals(5, options.getRetryCount());
         assertEquals(sslContext, options.getSslContext());
         assertEquals(1024, options.getShardWidth());
+        assertEquals(500, options.getKeyCacheSize());
+        assertEquals(codec, options.getRequestCodec());
+        assertEquals(8, options.getImportThreadCount());
     }
 }
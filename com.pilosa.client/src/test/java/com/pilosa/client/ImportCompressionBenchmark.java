@@ -0,0 +1,149 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import com.pilosa.client.orm.Field;
+import com.pilosa.client.orm.Schema;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.Random;
+
+/**
+ * Compares the size and the import throughput of uncompressed and compressed import requests.
+ * <p>
+ * Requests are sent to a local HTTP server which reads them at a limited bandwidth
+ * to simulate a slow link.
+ * Run with: mvn test -P benchmark
+ */
+@Category(Benchmark.class)
+public class ImportCompressionBenchmark {
+    @Test
+    public void compressionBenchmark() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new ThrottledHandler(BANDWIDTH_BYTES_PER_SECOND));
+        server.start();
+        String host = String.format("http://127.0.0.1:%d", server.getAddress().getPort());
+        try (PilosaClient client = PilosaClient.withAddress(host)) {
+            ImportRequest[] requests = new ImportRequest[BATCH_COUNT];
+            for (int i = 0; i < BATCH_COUNT; i++) {
+                requests[i] = records(i).toImportRequest();
+            }
+            // warm up
+            run(client, host, requests, null);
+            run(client, host, requests, new GzipCodec(1));
+
+            System.out.printf("import compression, simulated link: %d Mbit/s, %d batches of %d records%n",
+                    BANDWIDTH_BYTES_PER_SECOND * 8 / 1000000, BATCH_COUNT, BATCH_SIZE);
+            report("none", run(client, host, requests, null));
+            report("gzip level 1", run(client, host, requests, new GzipCodec(1)));
+            report("gzip default", run(client, host, requests, new GzipCodec()));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static long[] run(PilosaClient client, String host, ImportRequest[] requests, ContentCodec codec) {
+        long bytes = 0;
+        long tic = System.nanoTime();
+        for (ImportRequest request : requests) {
+            ImportRequest encoded = request.encode(codec);
+            bytes += encoded.getContentLength();
+            client.importNode(host, encoded);
+        }
+        return new long[]{bytes, System.nanoTime() - tic};
+    }
+
+    private static void report(String name, long[] result) {
+        long bytes = result[0];
+        double seconds = result[1] / 1e9;
+        System.out.printf("%-14s bytes on the wire: %10d, throughput: %10.0f records/s%n",
+                name, bytes, BATCH_COUNT * BATCH_SIZE / seconds);
+    }
+
+    private static ShardColumns records(long shard) {
+        Field field = Schema.defaultSchema().index("i").field("f");
+        ShardColumns records = ShardColumns.create(field, shard, ClientOptions.DEFAULT_SHARD_WIDTH,
+                ImportOptions.builder().build());
+        Random random = new Random(shard);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            long column = shard * ClientOptions.DEFAULT_SHARD_WIDTH + random.nextInt((int) ClientOptions.DEFAULT_SHARD_WIDTH);
+            records.add(Column.create(random.nextInt(100), column));
+        }
+        return records;
+    }
+
+    private static class ThrottledHandler implements HttpHandler {
+        ThrottledHandler(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            long tic = System.nanoTime();
+            long received = 0;
+            byte[] buffer = new byte[65536];
+            try (InputStream in = exchange.getRequestBody()) {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    received += n;
+                    long expectedNanos = received * 1000000000L / this.bytesPerSecond;
+                    long sleepMillis = (expectedNanos - (System.nanoTime() - tic)) / 1000000;
+                    if (sleepMillis > 0) {
+                        try {
+                            Thread.sleep(sleepMillis);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                }
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        }
+
+        private final long bytesPerSecond;
+    }
+
+    private static final long BANDWIDTH_BYTES_PER_SECOND = 100 * 1000000 / 8;
+    private static final int BATCH_COUNT = 10;
+    private static final int BATCH_SIZE = 100000;
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@Category(UnitTest.class)
+public class ImportEngineTest {
+    @Test
+    public void fairShareTest() throws Exception {
+        final ImportEngine engine = new ImportEngine(4, 4);
+        try {
+            ImportEngine.Share first = engine.share();
+            // a single import may use the whole budget
+            for (int i = 0; i < 4; i++) {
+                first.acquire();
+            }
+            final ImportEngine.Share second = engine.share();
+            final CountDownLatch acquired = new CountDownLatch(3);
+            engine.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        second.acquire();
+                        acquired.countDown();
+                        second.acquire();
+                        acquired.countDown();
+                        // the third request is over the share of the second import
+                        second.acquire();
+                        acquired.countDown();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            assertFalse(acquired.await(50, TimeUnit.MILLISECONDS));
+            assertEquals(3, acquired.getCount());
+            // the first import gets back to its share, so the second one can send its requests
+            first.release();
+            first.release();
+            assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+            assertEquals(1, acquired.getCount());
+            // and no more, while the first import is running
+            first.release();
+            assertFalse(acquired.await(50, TimeUnit.MILLISECONDS));
+            first.close();
+            assertTrue(acquired.await(1, TimeUnit.SECONDS));
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void closedShareTest() throws Exception {
+        ImportEngine engine = new ImportEngine(2, 4);
+        try {
+            ImportEngine.Share first = engine.share();
+            ImportEngine.Share second = engine.share();
+            first.acquire();
+            second.close();
+            // the share of the closed import goes to the running one
+            first.acquire();
+            first.release();
+            first.release();
+            first.close();
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void workersTest() throws Exception {
+        final ImportEngine engine = new ImportEngine(4, 4);
+        try {
+            assertEquals(3, engine.acquireWorkers(3));
+            // fewer workers than asked for while another import uses them
+            assertEquals(1, engine.acquireWorkers(2));
+            final CountDownLatch acquired = new CountDownLatch(1);
+            final AtomicInteger workers = new AtomicInteger();
+            engine.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        workers.set(engine.acquireWorkers(4));
+                        acquired.countDown();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            // an import waits until a worker is free
+            assertFalse(acquired.await(50, TimeUnit.MILLISECONDS));
+            engine.releaseWorkers(3);
+            assertTrue(acquired.await(1, TimeUnit.SECONDS));
+            assertEquals(3, workers.get());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void tasksTest() throws Exception {
+        ImportEngine engine = new ImportEngine(1, 4);
+        try {
+            ImportTasks tasks = engine.tasks();
+            final AtomicInteger count = new AtomicInteger();
+            for (int i = 0; i < 10; i++) {
+                tasks.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        count.incrementAndGet();
+                    }
+                });
+            }
+            tasks.awaitCompletion();
+            assertEquals(10, count.get());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void cancelTasksTest() throws Exception {
+        ImportEngine engine = new ImportEngine(1, 4);
+        try {
+            ImportTasks tasks = engine.tasks();
+            final CountDownLatch started = new CountDownLatch(1);
+            Future<?> task = tasks.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    started.countDown();
+                    Thread.sleep(10000);
+                    return null;
+                }
+            });
+            started.await();
+            tasks.cancel();
+            tasks.awaitCompletion();
+            assertTrue(task.isCancelled());
+            try {
+                tasks.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                    }
+                });
+                fail("expected the task to be rejected");
+            } catch (RejectedExecutionException e) {
+                // expected
+            }
+            // the threads are still available to other imports
+            Future<Integer> other = engine.tasks().submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return 42;
+                }
+            });
+            assertEquals(Integer.valueOf(42), other.get());
+        } finally {
+            engine.shutdown();
+        }
+    }
+}
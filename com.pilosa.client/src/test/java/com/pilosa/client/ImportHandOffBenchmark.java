@@ -0,0 +1,167 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import com.pilosa.client.orm.Record;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures the cost of passing records from the import producer to the import workers.
+ * <p>
+ * Run with: mvn test -P benchmark
+ */
+@Category(Benchmark.class)
+public class ImportHandOffBenchmark {
+    @Test
+    public void handOffBenchmark() throws InterruptedException {
+        for (int threadCount : new int[]{1, 4, 8}) {
+            // warm up
+            perRecordHandOff(threadCount);
+            chunkedHandOff(threadCount);
+            double before = perRecordHandOff(threadCount);
+            double after = chunkedHandOff(threadCount);
+            System.out.printf("hand-off threads:%d per-record queue: %.1f ns/record, chunked queue: %.1f ns/record%n",
+                    threadCount, before, after);
+        }
+    }
+
+    private static double perRecordHandOff(int threadCount) throws InterruptedException {
+        final Record end = Column.DEFAULT;
+        List<BlockingQueue<Record>> queues = new ArrayList<>(threadCount);
+        List<Thread> threads = new ArrayList<>(threadCount);
+        final long[] counts = new long[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            final BlockingQueue<Record> queue = new LinkedBlockingDeque<>(BATCH_SIZE);
+            final int index = i;
+            queues.add(queue);
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (queue.take() != end) {
+                            counts[index]++;
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }));
+        }
+        long tic = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            queues.get(i % threadCount).put(RECORDS[i % RECORDS.length]);
+        }
+        for (BlockingQueue<Record> queue : queues) {
+            queue.put(end);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - tic;
+        assertEquals(RECORD_COUNT, sum(counts));
+        return (double) elapsed / RECORD_COUNT;
+    }
+
+    private static double chunkedHandOff(int threadCount) throws InterruptedException {
+        List<RecordChunkQueue> queues = new ArrayList<>(threadCount);
+        List<Thread> threads = new ArrayList<>(threadCount);
+        final long[] counts = new long[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            final RecordChunkQueue queue = new RecordChunkQueue(RecordChunkQueue.DEFAULT_CHUNK_SIZE, BATCH_SIZE);
+            final int index = i;
+            queues.add(queue);
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Record[] chunk;
+                        while ((chunk = (Record[]) queue.take()).length > 0) {
+                            for (Record ignored : chunk) {
+                                counts[index]++;
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }));
+        }
+        long tic = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            queues.get(i % threadCount).put(RECORDS[i % RECORDS.length]);
+        }
+        for (RecordChunkQueue queue : queues) {
+            queue.close();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - tic;
+        assertEquals(RECORD_COUNT, sum(counts));
+        return (double) elapsed / RECORD_COUNT;
+    }
+
+    private static long sum(long[] counts) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    private static final int RECORD_COUNT = 5000000;
+    private static final int BATCH_SIZE = 100000;
+    private static final Record[] RECORDS = new Record[1024];
+
+    static {
+        for (int i = 0; i < RECORDS.length; i++) {
+            RECORDS[i] = Column.create(i % 10, i);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import com.pilosa.client.orm.Field;
+import com.pilosa.client.orm.Schema;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+@Category(UnitTest.class)
+public class ImportHandleTest {
+    @Test
+    public void completeTest() throws Exception {
+        ImportHandle handle = client(null).importFieldAsync(field(), new Columns(1000, 0), options());
+        ImportMetrics metrics = handle.get(10, TimeUnit.SECONDS);
+        assertTrue(handle.isDone());
+        assertFalse(handle.isCancelled());
+        assertEquals(1000, metrics.getImportedCount());
+        assertFalse(handle.cancel());
+    }
+
+    @Test
+    public void awaitFlushTest() throws Exception {
+        Columns columns = new Columns(Long.MAX_VALUE, 1);
+        ImportHandle handle = client(null).importFieldAsync(field(), columns, options());
+        while (columns.count.get() < 20) {
+            Thread.sleep(5);
+        }
+        long read = columns.count.get();
+        handle.awaitFlush();
+        // the batch size is not reached, the records are imported due to the flush
+        assertTrue(handle.getMetrics().getImportedCount() >= read);
+        assertFalse(handle.isDone());
+        assertTrue(handle.cancel());
+        try {
+            handle.get();
+            fail("expected a cancellation");
+        } catch (CancellationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void cancelTest() throws Exception {
+        Columns columns = new Columns(Long.MAX_VALUE, 1);
+        ImportHandle handle = client(null).importFieldAsync(field(), columns, options());
+        while (columns.count.get() < 20) {
+            Thread.sleep(5);
+        }
+        assertTrue(handle.cancel());
+        assertTrue(handle.isCancelled());
+        handle.awaitFlush();
+        // the records read before the import stopped are imported
+        ImportMetrics metrics = handle.getMetrics();
+        assertEquals(columns.count.get(), metrics.getImportedCount());
+        assertEquals(metrics.getReadCount(), metrics.getImportedCount());
+    }
+
+    @Test
+    public void failureTest() throws Exception {
+        ImportHandle handle = client(new RuntimeException("fail")).importFieldAsync(field(), new Columns(10, 0), options());
+        try {
+            handle.get();
+            fail("expected the import to fail");
+        } catch (ExecutionException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void listenerTest() throws Exception {
+        final CountDownLatch sending = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        PilosaClient client = new PilosaClient(URI.defaultURI(), ClientOptions.builder().build()) {
+            @Override
+            List<String> importHosts(ShardRecords records) {
+                return Collections.singletonList("node0");
+            }
+
+            @Override
+            void importNode(String hostUri, ImportRequest request) {
+                sending.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        ImportOptions options = ImportOptions.builder().setThreadCount(1).setBatchSize(10).build();
+        final ImportHandle handle = client.importFieldAsync(field(), new Columns(Long.MAX_VALUE, 1), options);
+        final CountDownLatch notified = new CountDownLatch(1);
+        final AtomicBoolean doneInListener = new AtomicBoolean();
+        Executor direct = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        handle.addListener(new Runnable() {
+            @Override
+            public void run() {
+                doneInListener.set(handle.isDone());
+                notified.countDown();
+            }
+        }, direct);
+        assertTrue(sending.await(10, TimeUnit.SECONDS));
+        assertTrue(handle.cancel());
+        // the import is still sending the records read before it was cancelled
+        assertFalse(handle.isDone());
+        assertFalse(notified.await(50, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(notified.await(10, TimeUnit.SECONDS));
+        assertTrue(doneInListener.get());
+        assertTrue(handle.isDone());
+
+        // a listener added after the import stopped runs right away
+        final CountDownLatch late = new CountDownLatch(1);
+        handle.addListener(new Runnable() {
+            @Override
+            public void run() {
+                late.countDown();
+            }
+        }, direct);
+        assertEquals(0, late.getCount());
+    }
+
+    private static PilosaClient client(final RuntimeException error) {
+        return new PilosaClient(URI.defaultURI(), ClientOptions.builder().build()) {
+            @Override
+            List<String> importHosts(ShardRecords records) {
+                return Collections.singletonList("node0");
+            }
+
+            @Override
+            void importNode(String hostUri, ImportRequest request) {
+                if (error != null) {
+                    throw error;
+                }
+            }
+        };
+    }
+
+    private static Field field() {
+        return Schema.defaultSchema().index("i").field("f");
+    }
+
+    private static ImportOptions options() {
+        return ImportOptions.builder().setThreadCount(2).setBatchSize(100000).build();
+    }
+
+    private static class Columns implements RecordIterator {
+        Columns(long max, long delayMs) {
+            this.max = max;
+            this.delayMs = delayMs;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.count.get() < this.max;
+        }
+
+        @Override
+        public Column next() {
+            if (this.delayMs > 0) {
+                try {
+                    Thread.sleep(this.delayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            long i = this.count.getAndIncrement();
+            return Column.create(1, i * 1000);
+        }
+
+        @Override
+        public void remove() {
+        }
+
+        private final long max;
+        private final long delayMs;
+        private final AtomicLong count = new AtomicLong();
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@Category(UnitTest.class)
+public class ImportMetricsCollectorTest {
+    @Test
+    public void snapshotTest() throws InterruptedException {
+        ImportMetricsCollector collector = new ImportMetricsCollector();
+        RecordChunkQueue queue = new RecordChunkQueue(2, 10);
+        queue.put(Column.create(1, 1));
+        queue.put(Column.create(1, 2));
+        collector.setQueues(Arrays.asList(queue, new RecordChunkQueue(2, 10)));
+        collector.addRead(10);
+        collector.addEncodeTime(TimeUnit.MILLISECONDS.toNanos(5));
+        collector.addShardRecords(0, 6);
+        collector.addShardRecords(1, 2);
+        collector.addShardRecords(1, 2);
+        collector.addRequest("node0", 6, 100, TimeUnit.MILLISECONDS.toNanos(3), true);
+        collector.addRequest("node1", 4, 50, TimeUnit.MILLISECONDS.toNanos(10), false);
+        collector.addRetry();
+        collector.addRequest("node1", 4, 50, TimeUnit.MILLISECONDS.toNanos(20), true);
+        collector.addImported(6);
+        collector.addImported(4);
+
+        ImportMetrics metrics = collector.snapshot();
+        assertEquals(10, metrics.getReadCount());
+        assertEquals(10, metrics.getImportedCount());
+        assertEquals(150, metrics.getByteCount());
+        assertEquals(5, metrics.getEncodeTimeMs());
+        assertEquals(33, metrics.getSendTimeMs());
+        assertEquals(1, metrics.getRetryCount());
+        assertArrayEquals(new int[]{2, 0}, metrics.getQueueDepths());
+        assertEquals(2, metrics.getShardCount());
+        assertEquals(1.2, metrics.getShardSkew(), 0.001);
+        assertEquals(3, metrics.getLatency().getCount());
+        assertEquals(20, metrics.getLatency().getMaxMs());
+
+        NodeImportMetrics node1 = metrics.getNodes().get("node1");
+        assertEquals(4, node1.getRecordCount());
+        assertEquals(50, node1.getByteCount());
+        assertEquals(2, node1.getRequestCount());
+        assertEquals(1, node1.getErrorCount());
+        assertEquals(2, node1.getLatency().getCount());
+        assertNotNull(metrics.toString());
+    }
+
+    @Test
+    public void finalReportTest() throws Exception {
+        ImportEngine engine = new ImportEngine(1, 1);
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            final List<ImportMetrics> reports = Collections.synchronizedList(new ArrayList<ImportMetrics>());
+            ImportMetricsCollector collector = new ImportMetricsCollector();
+            collector.startReporting(engine.reporter(), new ImportMetricsListener() {
+                @Override
+                public void metricsUpdated(ImportMetrics metrics) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    reports.add(metrics);
+                }
+            }, 1);
+            collector.addRead(10);
+            // a slow listener doesn't hold back the import
+            collector.stopReporting();
+            release.countDown();
+            engine.reporter().submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+            // the final report is the last one
+            assertFalse(reports.isEmpty());
+            assertEquals(10, reports.get(reports.size() - 1).getReadCount());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void latencyHistogramTest() {
+        assertEquals(0, LatencyHistogram.bucket(0));
+        assertEquals(1, LatencyHistogram.bucket(1));
+        assertEquals(2, LatencyHistogram.bucket(3));
+        assertEquals(3, LatencyHistogram.bucket(4));
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+
+        long[] counts = new long[LatencyHistogram.BUCKET_COUNT];
+        // 90 requests under 8 ms, 10 requests under 128 ms
+        counts[3] = 90;
+        counts[7] = 10;
+        LatencyHistogram histogram = new LatencyHistogram(counts, 1000, 100);
+        assertEquals(100, histogram.getCount());
+        assertEquals(8, histogram.getPercentileMs(50));
+        assertEquals(8, histogram.getPercentileMs(90));
+        assertEquals(100, histogram.getPercentileMs(99));
+        assertEquals(10.0, histogram.getMeanMs(), 0.001);
+        assertEquals(0, new LatencyHistogram(new long[LatencyHistogram.BUCKET_COUNT], 0, 0).getPercentileMs(50));
+    }
+}
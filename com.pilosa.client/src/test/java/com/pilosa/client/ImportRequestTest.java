@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import com.pilosa.client.orm.Field;
+import com.pilosa.client.orm.Schema;
+import org.apache.http.HttpEntity;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+@Category(UnitTest.class)
+public class ImportRequestTest {
+    @Test
+    public void encodeTest() throws IOException {
+        byte[] payload = new byte[4096];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) (i % 8);
+        }
+        ImportRequest request = ImportRequest.createCSVImport(field(), payload, false);
+        ImportRequest encoded = request.encode(new GzipCodec());
+        assertEquals("gzip", encoded.getContentEncoding());
+        assertEquals(request.getPath(), encoded.getPath());
+        assertTrue(encoded.getContentLength() < payload.length);
+        assertArrayEquals(payload, decode(encoded.getPayload()));
+        HttpEntity entity = encoded.toHttpEntity();
+        assertEquals("gzip", entity.getContentEncoding().getValue());
+        // encoding again doesn't change the request
+        assertSame(encoded, encoded.encode(new GzipCodec()));
+    }
+
+    @Test
+    public void encodeSmallRequestTest() {
+        ImportRequest request = ImportRequest.createCSVImport(field(), new byte[]{1, 2, 3}, false);
+        assertSame(request, request.encode(new GzipCodec()));
+        assertSame(request, request.encode(null));
+        assertNull(request.toHttpEntity().getContentEncoding());
+    }
+
+    @Test
+    public void encodeRoaringTest() throws IOException {
+        Map<String, byte[]> views = new HashMap<>();
+        views.put("", new byte[2048]);
+        ImportRequest request = ImportRequest.createRoaringImport(field(), 1, views, false);
+        ImportRequest encoded = request.encode(new GzipCodec(9));
+        assertEquals("gzip", encoded.getContentEncoding());
+        assertArrayEquals(request.getPayload(), decode(encoded.getPayload()));
+    }
+
+    private static byte[] decode(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            byte[] buffer = new byte[1024];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static Field field() {
+        return Schema.defaultSchema().index("i").field("f");
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import com.pilosa.client.exceptions.HttpConflict;
+import com.pilosa.client.exceptions.HttpError;
+import com.pilosa.client.exceptions.PilosaException;
+import com.pilosa.client.orm.Field;
+import com.pilosa.client.orm.Schema;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@Category(UnitTest.class)
+public class ImportSenderTest {
+    @Test
+    public void maxInFlightPerNodeTest() throws InterruptedException {
+        final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+        final Map<String, AtomicInteger> maxInFlight = new ConcurrentHashMap<>();
+        for (String host : Arrays.asList("node0", "node1")) {
+            inFlight.put(host, new AtomicInteger());
+            maxInFlight.put(host, new AtomicInteger());
+        }
+        PilosaClient client = new PilosaClient(URI.defaultURI(), ClientOptions.builder().build()) {
+            @Override
+            void importNode(String hostUri, ImportRequest request) {
+                int current = inFlight.get(hostUri).incrementAndGet();
+                AtomicInteger max = maxInFlight.get(hostUri);
+                while (true) {
+                    int m = max.get();
+                    if (current <= m || max.compareAndSet(m, current)) {
+                        break;
+                    }
+                }
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                inFlight.get(hostUri).decrementAndGet();
+            }
+        };
+        ImportOptions options = ImportOptions.builder()
+                .setMaxInFlightPerNode(3)
+                .build();
+        BlockingQueue<ImportStatusUpdate> statusQueue = new LinkedBlockingQueue<>();
+        ImportSender sender = new ImportSender(client, options, statusQueue);
+        ImportRequest request = ImportRequest.createCSVImport(field(), new byte[]{0}, false);
+        for (int i = 0; i < 20; i++) {
+            sender.send(1, records(i), System.currentTimeMillis(), Arrays.asList("node0", "node1"), request);
+        }
+        sender.close();
+        assertEquals(3, maxInFlight.get("node0").get());
+        assertEquals(3, maxInFlight.get("node1").get());
+        // a single status update is posted after a batch is sent to all nodes
+        assertEquals(20, statusQueue.size());
+    }
+
+    @Test
+    public void batchAwaitTest() throws InterruptedException {
+        final AtomicInteger sent = new AtomicInteger();
+        PilosaClient client = new PilosaClient(URI.defaultURI(), ClientOptions.builder().build()) {
+            @Override
+            void importNode(String hostUri, ImportRequest request) {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                sent.incrementAndGet();
+            }
+        };
+        ImportSender sender = new ImportSender(client, ImportOptions.builder().build(), null);
+        ImportRequest request = ImportRequest.createCSVImport(field(), new byte[]{0}, false);
+        ImportSender.Batch batch = sender.send(1, records(0), System.currentTimeMillis(),
+                Collections.singletonList("node0"), request);
+        batch.await();
+        assertEquals(1, sent.get());
+        sender.close();
+    }
+
+    @Test
+    public void failureTest() throws InterruptedException {
+        PilosaClient client = new PilosaClient(URI.defaultURI(), ClientOptions.builder().build()) {
+            @Override
+            void importNode(String hostUri, ImportRequest request) {
+                throw new PilosaException("node down");
+            }
+        };
+        ImportSender sender = new ImportSender(client, ImportOptions.builder().build(), null);
+        ImportRequest request = ImportRequest.createCSVImport(field(), new byte[]{0}, false);
+        sender.send(1, records(0), System.currentTimeMillis(), Collections.singletonList("node0"), request).await();
+        try {
+            sender.send(1, records(0), System.currentTimeMillis(), Collections.singletonList("node0"), request);
+            fail("send should fail after an earlier request failed");
+        } catch (PilosaException e) {
+            assertEquals("node down", e.getCause().getMessage());
+        }
+        try {
+            sender.close();
+            fail("close should fail after a request failed");
+        } catch (PilosaException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void concurrentReplicasTest() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(3);
+        PilosaClient client = new PilosaClient(URI.defaultURI(), ClientOptions.builder().build()) {
+            @Override
+            void importNode(String hostUri, ImportRequest request) {
+                started.countDown();
+                try {
+                    // each replica waits until all replicas are in flight
+                    if (!started.await(5, TimeUnit.SECONDS)) {
+                        throw new PilosaException("replicas were sent one after another");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        ImportSender sender = new ImportSender(client, ImportOptions.builder().build(), null);
+        ImportRequest request = ImportRequest.createCSVImport(field(), new byte[]{0}, false);
+        sender.send(1, records(0), System.currentTimeMillis(), Arrays.asList("node0", "node1", "node2"), request);
+        sender.close();
+    }
+
+    @Test
+    public void replicaQuorumTest() throws InterruptedException {
+        PilosaClient client = new PilosaClient(URI.defaultURI(), ClientOptions.builder().build()) {
+            @Override
+            void importNode(String hostUri, ImportRequest request) {
+                if ("node2".equals(hostUri)) {
+                    throw new PilosaException("node down");
+                }
+            }
+        };
+        ImportOptions options = ImportOptions.builder()
+                .setReplicaQuorum(2)
+                .build();
+        BlockingQueue<ImportStatusUpdate> statusQueue = new LinkedBlockingQueue<>();
+        ImportMetricsCollector metrics = new ImportMetricsCollector();
+        ImportSender sender = new ImportSender(client, options, statusQueue, null, metrics);
+        ImportRequest request = ImportRequest.createCSVImport(field(), new byte[]{0}, false);
+        sender.send(1, records(0), System.currentTimeMillis(), Arrays.asList("node0", "node1", "node2"), request).await();
+        sender.close();
+        assertEquals(1, statusQueue.size());
+        // the replica which lags behind is reported
+        ImportMetrics snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.getReplicaFailureCount());
+        assertEquals(1, snapshot.getNodes().get("node2").getReplicaFailureCount());
+        assertEquals(0, snapshot.getNodes().get("node0").getReplicaFailureCount());
+
+        // the quorum can't be reached if two of three replicas fail
+        options = ImportOptions.builder()
+                .setReplicaQuorum(2)
+                .build();
+        sender = new ImportSender(client, options, null);
+        sender.send(1, records(0), System.currentTimeMillis(), Arrays.asList("node0", "node2", "node2"), request).await();
+        try {
+            sender.close();
+            fail("close should fail if the quorum is not reached");
+        } catch (PilosaException e) {
+            assertEquals("node down", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void retryTest() throws InterruptedException {
+        final AtomicInteger attempts = new AtomicInteger();
+        PilosaClient client = new PilosaClient(URI.defaultURI(), ClientOptions.builder().setRetryCount(3).build()) {
+            @Override
+            void importNode(String hostUri, ImportRequest request) {
+                if (attempts.incrementAndGet() < 3) {
+                    throw new HttpError(503, "unavailable");
+                }
+            }
+        };
+        ImportOptions options = ImportOptions.builder()
+                .setRetryBackoffMs(1)
+                .build();
+        BlockingQueue<ImportStatusUpdate> statusQueue = new LinkedBlockingQueue<>();
+        ImportSender sender = new ImportSender(client, options, statusQueue);
+        ImportRequest request = ImportRequest.createCSVImport(field(), new byte[]{0}, false);
+        sender.send(1, records(0), System.currentTimeMillis(), Collections.singletonList("node0"), request);
+        sender.close();
+        assertEquals(3, attempts.get());
+        assertEquals(1, statusQueue.size());
+    }
+
+    @Test
+    public void noRetryForClientErrorsTest() throws InterruptedException {
+        final AtomicInteger attempts = new AtomicInteger();
+        PilosaClient client = new PilosaClient(URI.defaultURI(), ClientOptions.builder().setRetryCount(3).build()) {
+            @Override
+            void importNode(String hostUri, ImportRequest request) {
+                attempts.incrementAndGet();
+                throw new HttpError(400, "bad request");
+            }
+        };
+        ImportSender sender = new ImportSender(client, ImportOptions.builder().setRetryBackoffMs(1).build(), null);
+        ImportRequest request = ImportRequest.createCSVImport(field(), new byte[]{0}, false);
+        sender.send(1, records(0), System.currentTimeMillis(), Collections.singletonList("node0"), request).await();
+        try {
+            sender.close();
+            fail("close should fail");
+        } catch (PilosaException e) {
+            assertEquals("bad request", e.getCause().getMessage());
+        }
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void failoverTest() throws InterruptedException {
+        final List<String> sent = Collections.synchronizedList(new ArrayList<String>());
+        PilosaClient client = new PilosaClient(URI.defaultURI(), ClientOptions.builder().setRetryCount(1).build()) {
+            @Override
+            void importNode(String hostUri, ImportRequest request) {
+                if ("node1".equals(hostUri)) {
+                    throw new PilosaException("connection refused", new IOException("connection refused"));
+                }
+                sent.add(hostUri);
+            }
+
+            @Override
+            List<String> refreshImportHosts(String indexName, long shard, boolean keys) {
+                // node2 took over the shard from node1
+                return Arrays.asList("node0", "node2");
+            }
+        };
+        ImportSender sender = new ImportSender(client, ImportOptions.builder().setRetryBackoffMs(1).build(), null);
+        ImportRequest request = ImportRequest.createCSVImport(field(), new byte[]{0}, false);
+        sender.send(1, records(0), System.currentTimeMillis(), Arrays.asList("node0", "node1"), request);
+        sender.close();
+        Collections.sort(sent);
+        assertEquals(Arrays.asList("node0", "node2"), sent);
+    }
+
+    @Test
+    public void retryDelayTest() {
+        for (int retry = 0; retry < 5; retry++) {
+            long backoff = 100L << retry;
+            long delay = ImportSender.retryDelayMs(100, retry);
+            assertTrue(delay >= backoff / 2 && delay <= backoff);
+        }
+        assertTrue(ImportSender.retryDelayMs(100, 40) <= ImportSender.MAX_RETRY_BACKOFF_MS);
+        assertEquals(0, ImportSender.retryDelayMs(0, 3));
+    }
+
+    @Test
+    public void isRetryableTest() {
+        assertTrue(ImportSender.isRetryable(new HttpError(500, "")));
+        assertTrue(ImportSender.isRetryable(new HttpError(503, "")));
+        assertTrue(ImportSender.isRetryable(new HttpError(429, "")));
+        assertTrue(ImportSender.isRetryable(new PilosaException("", new IOException())));
+        assertFalse(ImportSender.isRetryable(new HttpError(400, "")));
+        assertFalse(ImportSender.isRetryable(new HttpConflict()));
+        assertFalse(ImportSender.isRetryable(new PilosaException("")));
+    }
+
+    @Test
+    public void isOverloadedTest() {
+        assertTrue(ImportSender.isOverloaded(new HttpError(429, "")));
+        assertTrue(ImportSender.isOverloaded(new HttpError(503, "")));
+        assertTrue(ImportSender.isOverloaded(new PilosaException("", new SocketTimeoutException())));
+        assertFalse(ImportSender.isOverloaded(new HttpError(500, "")));
+        assertFalse(ImportSender.isOverloaded(new PilosaException("", new IOException())));
+    }
+
+    private static ShardRecords records(long shard) {
+        ShardRecords records = ShardColumns.create(field(), shard, ClientOptions.DEFAULT_SHARD_WIDTH,
+                ImportOptions.builder().build());
+        for (int i = 0; i < 10; i++) {
+            records.add(Column.create(1, shard * ClientOptions.DEFAULT_SHARD_WIDTH + i));
+        }
+        return records;
+    }
+
+    private static Field field() {
+        return Schema.defaultSchema().index("i").field("f");
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.*;
+
+@Category(UnitTest.class)
+public class KeyCacheTest {
+    @Test
+    public void lookupTest() {
+        KeyCache cache = new KeyCache(10);
+        cache.put(new String[]{"a", "b"}, new long[]{1, 2}, 2);
+        String[] keys = {"a", "c", "b"};
+        long[] ids = new long[3];
+        boolean[] found = new boolean[3];
+        assertEquals(2, cache.lookup(keys, 3, ids, found));
+        assertTrue(found[0]);
+        assertFalse(found[1]);
+        assertTrue(found[2]);
+        assertEquals(1, ids[0]);
+        assertEquals(2, ids[2]);
+        KeyCacheStatistics stats = cache.getStatistics();
+        assertEquals(2, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(0, stats.getEvictions());
+        assertEquals(2, stats.getSize());
+        assertEquals("hits:2 misses:1 evictions:0 size:2", stats.toString());
+    }
+
+    @Test
+    public void evictionTest() {
+        int capacity = 100;
+        KeyCache cache = new KeyCache(capacity);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(new String[]{"key" + i}, new long[]{i}, 1);
+        }
+        KeyCacheStatistics stats = cache.getStatistics();
+        assertEquals(capacity, stats.getSize());
+        assertEquals(900, stats.getEvictions());
+        // the most recent keys are still reachable after the deletions
+        String[] keys = new String[capacity];
+        for (int i = 0; i < capacity; i++) {
+            keys[i] = "key" + (900 + i);
+        }
+        long[] ids = new long[capacity];
+        boolean[] found = new boolean[capacity];
+        assertEquals(capacity, cache.lookup(keys, capacity, ids, found));
+        for (int i = 0; i < capacity; i++) {
+            assertEquals(900 + i, ids[i]);
+        }
+    }
+
+    @Test
+    public void growTest() {
+        // the arrays start smaller than the capacity and grow as keys are added
+        int capacity = 1000;
+        KeyCache cache = new KeyCache(capacity);
+        String[] keys = new String[capacity];
+        long[] values = new long[capacity];
+        for (int i = 0; i < capacity; i++) {
+            keys[i] = "key" + i;
+            values[i] = i;
+        }
+        cache.put(keys, values, capacity);
+        long[] ids = new long[capacity];
+        boolean[] found = new boolean[capacity];
+        assertEquals(capacity, cache.lookup(keys, capacity, ids, found));
+        assertArrayEquals(values, ids);
+        assertEquals(0, cache.getStatistics().getEvictions());
+        cache.put(new String[]{"other"}, new long[]{-1}, 1);
+        assertEquals(capacity, cache.getStatistics().getSize());
+        assertEquals(1, cache.getStatistics().getEvictions());
+    }
+
+    @Test
+    public void referencedKeysSurviveTest() {
+        KeyCache cache = new KeyCache(2);
+        cache.put(new String[]{"a", "b"}, new long[]{1, 2}, 2);
+        long[] ids = new long[1];
+        boolean[] found = new boolean[1];
+        cache.lookup(new String[]{"a"}, 1, ids, found);
+        cache.put(new String[]{"c"}, new long[]{3}, 1);
+        assertEquals(1, cache.lookup(new String[]{"a"}, 1, ids, found));
+        assertEquals(0, cache.lookup(new String[]{"b"}, 1, ids, found));
+        assertEquals(1, cache.lookup(new String[]{"c"}, 1, ids, found));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCapacityTest() {
+        new KeyCache(0);
+    }
+}
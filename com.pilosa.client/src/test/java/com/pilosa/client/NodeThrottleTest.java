@@ -0,0 +1,130 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@Category(UnitTest.class)
+public class NodeThrottleTest {
+    @Test
+    public void fixedLimitTest() throws InterruptedException {
+        NodeThrottle throttle = new NodeThrottle(2, false, 0, 100);
+        throttle.acquire();
+        throttle.acquire();
+        throttle.observe(System.currentTimeMillis(), 10, true);
+        assertEquals(2, throttle.getLimit());
+        assertFalse(acquired(throttle, 50));
+        throttle.release();
+        throttle.release();
+    }
+
+    @Test
+    public void overloadTest() {
+        NodeThrottle throttle = new NodeThrottle(8, true, 0, 100);
+        throttle.observe(1000, 10, true);
+        assertEquals(4, throttle.getLimit());
+        // requests in flight before the decrease don't decrease the limit again
+        throttle.observe(1005, 10, true);
+        assertEquals(4, throttle.getLimit());
+        throttle.observe(1020, 10, true);
+        assertEquals(2, throttle.getLimit());
+        throttle.observe(1040, 10, true);
+        throttle.observe(1060, 10, true);
+        assertEquals(1, throttle.getLimit());
+    }
+
+    @Test
+    public void latencyTest() {
+        NodeThrottle throttle = new NodeThrottle(8, true, 100, 100);
+        throttle.observe(1000, 50, false);
+        assertEquals(8, throttle.getLimit());
+        throttle.observe(1000, 200, false);
+        assertEquals(4, throttle.getLimit());
+    }
+
+    @Test
+    public void rampUpTest() {
+        NodeThrottle throttle = new NodeThrottle(4, true, 0, 100);
+        throttle.observe(1000, 10, true);
+        throttle.observe(1020, 10, true);
+        assertEquals(1, throttle.getLimit());
+        throttle.observe(2000, 10, false);
+        assertEquals(2, throttle.getLimit());
+        // about one more request per round trip at the current limit
+        throttle.observe(2000, 10, false);
+        throttle.observe(2000, 10, false);
+        throttle.observe(2000, 10, false);
+        assertEquals(3, throttle.getLimit());
+        for (int i = 0; i < 100; i++) {
+            throttle.observe(2000, 10, false);
+        }
+        assertEquals(4, throttle.getLimit());
+    }
+
+    @Test
+    public void pauseTest() throws InterruptedException {
+        NodeThrottle throttle = new NodeThrottle(4, true, 0, 200);
+        throttle.observe(System.currentTimeMillis(), 0, true);
+        // the node is paused after it was overloaded
+        assertFalse(acquired(throttle, 50));
+        assertTrue(acquired(throttle, 1000));
+    }
+
+    private static boolean acquired(final NodeThrottle throttle, long timeoutMs) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    throttle.acquire();
+                    latch.countDown();
+                } catch (InterruptedException e) {
+                    // the test gave up waiting
+                }
+            }
+        });
+        thread.start();
+        boolean acquired = latch.await(timeoutMs, TimeUnit.MILLISECONDS);
+        thread.interrupt();
+        thread.join();
+        return acquired;
+    }
+}
@@ -42,12 +42,19 @@ import com.pilosa.client.orm.Schema;
 import com.pilosa.client.status.IFieldInfo;
 import com.pilosa.client.status.IndexInfo;
 import com.pilosa.client.status.SchemaInfo;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -104,6 +111,146 @@ public class PilosaClientTest {
         client.makeRequest("INVALID", "/foo", null, null, false);
     }
 
+    @Test
+    public void translateKeysCacheTest() throws IOException {
+        final List<Internal.TranslateKeysRequest> requests = new ArrayList<>();
+        PilosaClient client = new PilosaClient(URI.defaultURI(), ClientOptions.builder().build()) {
+            @Override
+            public long[] translateKeys(Internal.TranslateKeysRequest request) {
+                requests.add(request);
+                long[] ids = new long[request.getKeysCount()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = Long.parseLong(request.getKeys(i).substring(1));
+                }
+                return ids;
+            }
+        };
+        Field field = Schema.defaultSchema().index("foo").field("bar");
+        assertArrayEquals(new long[]{1, 2, 1}, client.translateRowKeys(field, new String[]{"r1", "r2", "r1"}));
+        assertEquals(1, requests.size());
+        assertEquals(2, requests.get(0).getKeysCount());
+        assertEquals("bar", requests.get(0).getField());
+
+        assertArrayEquals(new long[]{2, 3}, client.translateRowKeys(field, new String[]{"r2", "r3"}));
+        assertEquals(2, requests.size());
+        assertEquals(Collections.singletonList("r3"), requests.get(1).getKeysList());
+        KeyCacheStatistics stats = client.getRowKeyCacheStatistics(field);
+        assertEquals(1, stats.getHits());
+        assertEquals(4, stats.getMisses());
+
+        // column keys are cached separately
+        assertArrayEquals(new long[]{2}, client.translateColumnKeys(field.getIndex(), new String[]{"c2"}));
+        assertEquals(3, requests.size());
+        assertEquals("", requests.get(2).getField());
+        assertEquals(1, client.getColumnKeyCacheStatistics(field.getIndex()).getSize());
+    }
+
+    @Test
+    public void dropKeyCachesTest() throws IOException {
+        ClientOptions options = ClientOptions.builder().setRetryCount(0).build();
+        PilosaClient client = new PilosaClient(URI.address("non-existent-domain-555.com:19000"), options) {
+            @Override
+            public long[] translateKeys(Internal.TranslateKeysRequest request) {
+                return new long[request.getKeysCount()];
+            }
+        };
+        Index index = Schema.defaultSchema().index("foo");
+        Field field = index.field("bar");
+        Field other = index.field("baz");
+        client.translateColumnKeys(index, new String[]{"c1"});
+        client.translateRowKeys(field, new String[]{"r1"});
+        client.translateRowKeys(other, new String[]{"r1"});
+        try {
+            client.deleteField(field);
+            fail("expected the request to fail");
+        } catch (PilosaException e) {
+            // the cache is dropped even if the field may not have been deleted
+        }
+        assertEquals(0, client.getRowKeyCacheStatistics(field).getSize());
+        assertEquals(1, client.getRowKeyCacheStatistics(other).getSize());
+        assertEquals(1, client.getColumnKeyCacheStatistics(index).getSize());
+        try {
+            client.deleteIndex(index);
+            fail("expected the request to fail");
+        } catch (PilosaException e) {
+            // expected
+        }
+        assertEquals(0, client.getRowKeyCacheStatistics(other).getSize());
+        assertEquals(0, client.getColumnKeyCacheStatistics(index).getSize());
+    }
+
+    @Test
+    public void keyCacheCountTest() throws IOException {
+        PilosaClient client = new PilosaClient(URI.defaultURI(), ClientOptions.builder().build()) {
+            @Override
+            public long[] translateKeys(Internal.TranslateKeysRequest request) {
+                return new long[request.getKeysCount()];
+            }
+        };
+        Index first = Schema.defaultSchema().index("i0");
+        client.translateColumnKeys(first, new String[]{"c1"});
+        for (int i = 1; i <= 100; i++) {
+            client.translateColumnKeys(Schema.defaultSchema().index("i" + i), new String[]{"c1"});
+        }
+        // the least recently used cache was dropped
+        assertEquals(0, client.getColumnKeyCacheStatistics(first).getSize());
+    }
+
+    @Test
+    public void translateKeysNoCacheTest() throws IOException {
+        final List<Internal.TranslateKeysRequest> requests = new ArrayList<>();
+        ClientOptions options = ClientOptions.builder().setKeyCacheSize(0).build();
+        PilosaClient client = new PilosaClient(URI.defaultURI(), options) {
+            @Override
+            public long[] translateKeys(Internal.TranslateKeysRequest request) {
+                requests.add(request);
+                return new long[request.getKeysCount()];
+            }
+        };
+        Index index = Schema.defaultSchema().index("foo");
+        client.translateColumnKeys(index, new String[]{"c1"});
+        client.translateColumnKeys(index, new String[]{"c1"});
+        assertEquals(2, requests.size());
+        assertEquals(0, client.getColumnKeyCacheStatistics(index).getHits());
+    }
+
+    @Test
+    public void translateKeysCoordinatorTest() throws IOException {
+        final List<Boolean> useCoordinator = new ArrayList<>();
+        PilosaClient client = new PilosaClient(URI.defaultURI(), ClientOptions.builder().build()) {
+            @Override
+            HttpRequestBase makeRequest(String method, String path, HttpEntity data, Header[] headers,
+                                        boolean coordinator) {
+                useCoordinator.add(coordinator);
+                throw new PilosaException("no server");
+            }
+        };
+        Internal.TranslateKeysRequest request = Internal.TranslateKeysRequest.newBuilder()
+                .setIndex("foo")
+                .addKeys("c1")
+                .build();
+        try {
+            client.translateKeys(request);
+            fail("expected the request to fail");
+        } catch (PilosaException e) {
+            // expected
+        }
+        assertEquals(Collections.singletonList(true), useCoordinator);
+    }
+
+    @Test
+    public void readTranslateKeysResponseTest() throws IOException {
+        Internal.TranslateKeysResponse response = Internal.TranslateKeysResponse.newBuilder()
+                .addIDs(5)
+                .addIDs(1L << 40)
+                .addIDs(7)
+                .build();
+        long[] ids = PilosaClient.readTranslateKeysResponse(new ByteArrayInputStream(response.toByteArray()), 1);
+        assertArrayEquals(new long[]{5, 1L << 40, 7}, ids);
+        ids = PilosaClient.readTranslateKeysResponse(new ByteArrayInputStream(new byte[0]), 0);
+        assertEquals(0, ids.length);
+    }
+
     @Test
     public void setExcludeAttributesTest() {
         // Just to satisfy coveralls...
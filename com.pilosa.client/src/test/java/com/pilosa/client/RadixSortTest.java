@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@Category(UnitTest.class)
+public class RadixSortTest {
+    @Test
+    public void sortPrimaryTest() {
+        long[] keys = {5, 3, Long.MAX_VALUE, -1, 0, 3, 1L << 40, Long.MIN_VALUE};
+        int[] order = RadixSort.sort(keys, null, keys.length, null);
+        long[] sorted = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            sorted[i] = keys[order[i]];
+        }
+        long[] target = Arrays.copyOf(keys, keys.length);
+        Arrays.sort(target);
+        assertArrayEquals(target, sorted);
+        // stable: the first 3 comes first
+        assertEquals(1, order[3]);
+        assertEquals(5, order[4]);
+    }
+
+    @Test
+    public void sortPrimarySecondaryTest() {
+        Random random = new Random(42);
+        int size = 10000;
+        long[] rows = new long[size];
+        long[] columns = new long[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = random.nextInt(10);
+            columns[i] = random.nextInt(1 << 20) + (3L << 20);
+        }
+        int[] order = RadixSort.sort(rows, columns, size, null);
+        for (int i = 1; i < size; i++) {
+            long prevRow = rows[order[i - 1]];
+            long row = rows[order[i]];
+            assertTrue(prevRow <= row);
+            if (prevRow == row) {
+                assertTrue(columns[order[i - 1]] <= columns[order[i]]);
+            }
+        }
+    }
+
+    @Test
+    public void sortIdenticalKeysKeepsOrderTest() {
+        long[] keys = new long[5];
+        int[] order = RadixSort.sort(keys, keys, keys.length, null);
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4}, order);
+    }
+
+    @Test
+    public void sortReusesOrderTest() {
+        long[] keys = {3, 2, 1};
+        int[] buffer = new int[10];
+        int[] order = RadixSort.sort(keys, null, 2, buffer);
+        assertSame(buffer, order);
+        assertEquals(1, order[0]);
+        assertEquals(0, order[1]);
+    }
+}
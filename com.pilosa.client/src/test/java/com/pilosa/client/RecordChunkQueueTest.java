@@ -0,0 +1,104 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import com.pilosa.client.orm.Record;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.*;
+
+@Category(UnitTest.class)
+public class RecordChunkQueueTest {
+    @Test
+    public void chunksTest() throws InterruptedException {
+        RecordChunkQueue queue = new RecordChunkQueue(3, 100);
+        for (int i = 0; i < 7; i++) {
+            assertTrue(queue.put(Column.create(1, i)));
+        }
+        assertTrue(queue.close());
+        Record[] chunk = (Record[]) queue.take();
+        assertEquals(3, chunk.length);
+        assertEquals(Column.create(1, 0), chunk[0]);
+        assertEquals(3, ((Record[]) queue.take()).length);
+        chunk = (Record[]) queue.take();
+        assertEquals(1, chunk.length);
+        assertEquals(Column.create(1, 6), chunk[0]);
+        assertEquals(0, ((Record[]) queue.take()).length);
+    }
+
+    @Test
+    public void flushTest() throws InterruptedException {
+        RecordChunkQueue queue = new RecordChunkQueue(10, 100);
+        assertTrue(queue.flush());
+        queue.put(Column.create(1, 1));
+        assertTrue(queue.flush());
+        assertEquals(1, ((Record[]) queue.take()).length);
+        queue.put(Column.create(1, 2));
+        queue.close();
+        Record[] chunk = (Record[]) queue.take();
+        assertEquals(1, chunk.length);
+        assertEquals(Column.create(1, 2), chunk[0]);
+    }
+
+    @Test
+    public void blockTest() throws InterruptedException {
+        RecordChunkQueue queue = new RecordChunkQueue(2, 100);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(queue.put(i, 10 + i, 0));
+        }
+        // the partial block is not passed yet
+        assertEquals(2, queue.size());
+        queue.close();
+        RecordBlock block = (RecordBlock) queue.take();
+        assertEquals(2, block.size());
+        assertEquals(1, block.columnIDs[1]);
+        assertEquals(11, block.rowIDs[1]);
+        block = (RecordBlock) queue.take();
+        assertEquals(1, block.size());
+        assertEquals(2, block.columnIDs[0]);
+        assertEquals(0, ((Record[]) queue.take()).length);
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void stoppedConsumerTest() throws InterruptedException {
+        // one chunk of one record fits in the queue
+        RecordChunkQueue queue = new RecordChunkQueue(1, 1);
+        assertTrue(queue.put(Column.create(1, 1)));
+        queue.stop();
+        assertFalse(queue.put(Column.create(1, 2)));
+    }
+}
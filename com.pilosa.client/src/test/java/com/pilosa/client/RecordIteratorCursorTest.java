@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+@Category(UnitTest.class)
+public class RecordIteratorCursorTest {
+    @Test
+    public void columnsTest() {
+        RecordIteratorCursor cursor = new RecordIteratorCursor(Arrays.asList(
+                Column.create(1, 10, 100),
+                Column.create(2, 20)
+        ).iterator());
+        assertTrue(cursor.advance());
+        assertEquals(1, cursor.rowID());
+        assertEquals(10, cursor.columnID());
+        assertEquals(100, cursor.timestamp());
+        assertTrue(cursor.advance());
+        assertEquals(2, cursor.rowID());
+        assertEquals(20, cursor.columnID());
+        assertEquals(0, cursor.timestamp());
+        assertFalse(cursor.advance());
+    }
+
+    @Test
+    public void fieldValuesTest() {
+        RecordIteratorCursor cursor = new RecordIteratorCursor(Collections.singletonList(
+                FieldValue.create(10, -5)).iterator());
+        assertTrue(cursor.advance());
+        assertEquals(10, cursor.columnID());
+        assertEquals(-5, cursor.value());
+        assertEquals(0, cursor.rowID());
+        assertFalse(cursor.advance());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidRecordTest() {
+        RecordIteratorCursor cursor = new RecordIteratorCursor(Collections.singletonList(
+                WideRecord.create(1, 1)).iterator());
+        cursor.advance();
+    }
+}
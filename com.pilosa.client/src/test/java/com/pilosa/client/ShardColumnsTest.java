@@ -34,17 +34,25 @@
 package com.pilosa.client;
 
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.pilosa.client.orm.Field;
 import com.pilosa.client.orm.FieldOptions;
 import com.pilosa.client.orm.Index;
 import com.pilosa.client.orm.IndexOptions;
+import com.pilosa.roaring.Bitmap;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static com.pilosa.client.Internal.ImportRequest.parseFrom;
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 @Category(UnitTest.class)
 public class ShardColumnsTest {
@@ -108,6 +116,144 @@ public class ShardColumnsTest {
         assertEquals(INDEX_NAME, internalImportRequest.getIndex());
     }
 
+    @Test
+    public void testToImportRequestCsvSorted() throws InvalidProtocolBufferException {
+        List<Column> columns = Arrays.asList(Column.create(2L, 100L, 3L),
+                Column.create(1L, 101L, 2L),
+                Column.create(1L, 100L, 1L));
+        ShardColumns shardColumns = buildShardColumns(false, false, false, columns);
+        Internal.ImportRequest internalImportRequest = toShardColumnsInternalImportRequest(shardColumns);
+        assertEquals(Arrays.asList(1L, 1L, 2L), internalImportRequest.getRowIDsList());
+        assertEquals(Arrays.asList(100L, 101L, 100L), internalImportRequest.getColumnIDsList());
+        assertEquals(Arrays.asList(1L, 2L, 3L), internalImportRequest.getTimestampsList());
+        assertEquals(1L, internalImportRequest.getShard());
+    }
+
+    @Test
+    public void testToImportRequestCsvAfterClear() throws InvalidProtocolBufferException {
+        List<Column> columns = Arrays.asList(Column.create(2L, 100L),
+                Column.create(1L, 101L));
+        ShardColumns shardColumns = buildShardColumns(false, false, false, columns);
+        toShardColumnsInternalImportRequest(shardColumns);
+        shardColumns.clear();
+        assertEquals(0, shardColumns.size());
+        addColumns(shardColumns, Arrays.asList(Column.create(5L, 200L), Column.create(4L, 201L)));
+        Internal.ImportRequest internalImportRequest = toShardColumnsInternalImportRequest(shardColumns);
+        assertEquals(Arrays.asList(4L, 5L), internalImportRequest.getRowIDsList());
+        assertEquals(Arrays.asList(201L, 200L), internalImportRequest.getColumnIDsList());
+    }
+
+    @Test
+    public void testToImportRequestRoaring() throws IOException {
+        List<Column> columns = Arrays.asList(Column.create(1L, 100L),
+                Column.create(2L, ClientOptions.DEFAULT_SHARD_WIDTH + 5));
+        ShardColumns shardColumns = buildShardColumns(false, false, true, columns);
+        ImportRequest request = shardColumns.toImportRequest();
+        assertTrue(request.getPath().endsWith("/import-roaring/1"));
+
+        Bitmap bitmap = new Bitmap();
+        bitmap.add(ClientOptions.DEFAULT_SHARD_WIDTH + 100);
+        bitmap.add(2 * ClientOptions.DEFAULT_SHARD_WIDTH + 5);
+        byte[] target = bitmap.serialize().array();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        request.toHttpEntity().writeTo(out);
+        byte[] payload = out.toByteArray();
+        assertEquals(request.getContentLength(), payload.length);
+        Internal.ImportRoaringRequest roaringRequest = Internal.ImportRoaringRequest.parseFrom(payload);
+        assertFalse(roaringRequest.getClear());
+        assertEquals(1, roaringRequest.getViewsCount());
+        assertEquals("", roaringRequest.getViews(0).getName());
+        assertArrayEquals(target, roaringRequest.getViews(0).getData().toByteArray());
+        assertArrayEquals(payload, request.getPayload());
+    }
+
+    @Test
+    public void testToImportRequestRoaringTimeClear() throws IOException {
+        List<Column> columns = Arrays.asList(Column.create(1L, 100L, 1542199376000000000L));
+        ImportOptions options = ImportOptions.builder()
+                .setRoaring(true)
+                .setClear(true)
+                .build();
+        Field field = Index.create(INDEX_NAME).field(FIELD_NAME,
+                FieldOptions.builder().fieldTime(TimeQuantum.YEAR_MONTH).build());
+        ShardColumns shardColumns = addColumns(ShardColumns.create(field, 0L,
+                ClientOptions.DEFAULT_SHARD_WIDTH, options), columns);
+        ImportRequest request = shardColumns.toImportRequest();
+        assertTrue(request.getPath().endsWith("/import-roaring/0?clear=true"));
+        Internal.ImportRoaringRequest roaringRequest = Internal.ImportRoaringRequest.parseFrom(request.getPayload());
+        assertTrue(roaringRequest.getClear());
+        Set<String> viewNames = new HashSet<>();
+        for (Internal.ImportRoaringRequestView view : roaringRequest.getViewsList()) {
+            viewNames.add(view.getName());
+        }
+        assertEquals(new HashSet<>(Arrays.asList("", "2018", "201811")), viewNames);
+    }
+
+    @Test
+    public void testTranslateKeysRoaring() {
+        long shardWidth = ClientOptions.DEFAULT_SHARD_WIDTH;
+        List<Column> columns = Arrays.asList(Column.create("row-a", "column-a", 5L),
+                Column.create("row-b", "column-b"),
+                Column.create("row-a", "column-c"));
+        ShardColumns shardColumns = buildShardColumns(true, true, true, columns);
+        final Map<String, Long> ids = new HashMap<>();
+        ids.put("row-a", 1L);
+        ids.put("row-b", 2L);
+        ids.put("column-a", 10L);
+        ids.put("column-b", shardWidth + 10);
+        ids.put("column-c", 11L);
+        PilosaClient client = new PilosaClient(URI.defaultURI(), ClientOptions.builder().build()) {
+            @Override
+            long[] translateRowKeys(Field field, String[] keys, int size) {
+                return lookup(keys, size);
+            }
+
+            @Override
+            long[] translateColumnKeys(Index index, String[] keys, int size) {
+                return lookup(keys, size);
+            }
+
+            private long[] lookup(String[] keys, int size) {
+                long[] result = new long[size];
+                for (int i = 0; i < size; i++) {
+                    result[i] = ids.get(keys[i]);
+                }
+                return result;
+            }
+        };
+        List<ShardRecords> translated = shardColumns.translateKeys(client);
+        assertEquals(2, translated.size());
+        Map<Long, ShardRecords> byShard = new HashMap<>();
+        for (ShardRecords records : translated) {
+            assertFalse(records.isIndexKeys());
+            assertFalse(records.isFieldKeys());
+            byShard.put(records.getShard(), records);
+        }
+        assertEquals(2, byShard.get(0L).size());
+        assertEquals(1, byShard.get(1L).size());
+        assertTrue(byShard.get(0L).toImportRequest().getPath().endsWith("/import-roaring/0"));
+    }
+
+    @Test
+    public void testTranslateKeysNotRoaring() {
+        List<Column> columns = Arrays.asList(Column.create("row-a", "column-a"));
+        ShardColumns shardColumns = buildShardColumns(true, true, false, columns);
+        assertNull(shardColumns.translateKeys(PilosaClient.defaultClient()));
+    }
+
+    @Test
+    public void testToImportRequestCsvPresorted() throws InvalidProtocolBufferException {
+        ImportOptions options = ImportOptions.builder().setSorted(true).build();
+        Field field = Index.create(INDEX_NAME).field(FIELD_NAME);
+        // sorted columns are sent in the order they were added
+        ShardColumns shardColumns = addColumns(ShardColumns.create(field, 0L, ClientOptions.DEFAULT_SHARD_WIDTH, options),
+                Arrays.asList(Column.create(2L, 5L), Column.create(1L, 3L)));
+        Internal.ImportRequest request = toShardColumnsInternalImportRequest(shardColumns);
+        assertEquals(Arrays.asList(2L, 1L), request.getRowIDsList());
+        assertEquals(Arrays.asList(5L, 3L), request.getColumnIDsList());
+    }
+
     private static ShardColumns buildShardColumns(boolean indexKeys, boolean fieldKeys,
                                                   boolean isRoaring, List<Column> columns) {
         ImportOptions options = ImportOptions.builder()
@@ -44,7 +44,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import static com.pilosa.client.Internal.ImportValueRequest.parseFrom;
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 @Category(UnitTest.class)
 public class ShardFieldValuesTest {
@@ -80,6 +80,36 @@ public class ShardFieldValuesTest {
         assertEquals(INDEX_NAME, internalImportValueRequest.getIndex());
     }
 
+    @Test
+    public void testToImportRequestCsvSorted() throws InvalidProtocolBufferException {
+        List<FieldValue> fieldValues = Arrays.asList(FieldValue.create(3L, -30L),
+                FieldValue.create(1L, 10L),
+                FieldValue.create(2L, 20L));
+        ShardFieldValues shardFieldValues = buildShardFieldValues(false, false, fieldValues);
+        Internal.ImportValueRequest internalImportValueRequest = toShardFieldValuesInternalImportValueRequest(shardFieldValues);
+        assertEquals(Arrays.asList(1L, 2L, 3L), internalImportValueRequest.getColumnIDsList());
+        assertEquals(Arrays.asList(10L, 20L, -30L), internalImportValueRequest.getValuesList());
+    }
+
+    @Test
+    public void testToImportRequestRoaringKeysFallback() throws InvalidProtocolBufferException {
+        List<FieldValue> fieldValues = Arrays.asList(FieldValue.create("column-a", 10L));
+        ShardFieldValues shardFieldValues = buildShardFieldValues(true, true, fieldValues);
+        Internal.ImportValueRequest internalImportValueRequest = toShardFieldValuesInternalImportValueRequest(shardFieldValues);
+        assertEquals("column-a", internalImportValueRequest.getColumnKeys(0));
+    }
+
+    @Test
+    public void testToImportRequestRoaringUsesValueImport() throws InvalidProtocolBufferException {
+        // int fields are imported with value imports with roaring imports enabled as well
+        List<FieldValue> fieldValues = Arrays.asList(FieldValue.create(1L, 10L));
+        ShardFieldValues shardFieldValues = buildShardFieldValues(false, true, fieldValues);
+        assertFalse(shardFieldValues.toImportRequest().getPath().contains("import-roaring"));
+        Internal.ImportValueRequest request = toShardFieldValuesInternalImportValueRequest(shardFieldValues);
+        assertEquals(1, request.getColumnIDs(0));
+        assertEquals(10, request.getValues(0));
+    }
+
     private static ShardFieldValues buildShardFieldValues(boolean indexKeys,
                                                   boolean isRoaring, List<FieldValue> fieldValues) {
         ImportOptions options = ImportOptions.builder()
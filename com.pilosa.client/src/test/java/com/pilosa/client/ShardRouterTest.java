@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import com.pilosa.client.exceptions.PilosaException;
+import com.pilosa.client.orm.Field;
+import com.pilosa.client.orm.Schema;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@Category(UnitTest.class)
+public class ShardRouterTest {
+    @Test
+    public void spreadNodeShardsTest() {
+        Field field = Schema.defaultSchema().index("i").field("f");
+        PilosaClient client = new PilosaClient(URI.defaultURI(), ClientOptions.builder().build()) {
+            @Override
+            List<String> importHosts(String indexName, long shard) {
+                return Collections.singletonList("node" + (shard % 2));
+            }
+        };
+        ShardRouter router = new ShardRouter(client, field, client.importEngine().tasks(), 4);
+        // the shards of node0 arrive first, they shouldn't end up on the same workers as the shards of node1
+        Set<Integer> node0Workers = new HashSet<>();
+        for (long shard = 0; shard < 8; shard += 2) {
+            node0Workers.add(router.workerIndex(shard));
+        }
+        assertEquals(4, node0Workers.size());
+        Set<Integer> node1Workers = new HashSet<>();
+        for (long shard = 1; shard < 8; shard += 2) {
+            node1Workers.add(router.workerIndex(shard));
+        }
+        assertEquals(4, node1Workers.size());
+        // the assignments don't change
+        for (long shard = 0; shard < 8; shard++) {
+            assertEquals(router.workerIndex(shard), router.workerIndex(shard));
+        }
+    }
+
+    @Test
+    public void unknownNodeTest() {
+        Field field = Schema.defaultSchema().index("i").field("f");
+        PilosaClient client = new PilosaClient(URI.defaultURI(), ClientOptions.builder().build()) {
+            @Override
+            List<String> importHosts(String indexName, long shard) {
+                throw new PilosaException("cluster is down");
+            }
+        };
+        ShardRouter router = new ShardRouter(client, field, client.importEngine().tasks(), 3);
+        Set<Integer> workers = new HashSet<>();
+        for (long shard = 0; shard < 6; shard++) {
+            workers.add(router.workerIndex(shard));
+        }
+        assertEquals(3, workers.size());
+    }
+
+    @Test
+    public void prefetchNodesTest() throws Exception {
+        Field field = Schema.defaultSchema().index("i").field("f");
+        final Map<Long, Thread> lookups = new ConcurrentHashMap<>();
+        final AtomicInteger lookupCount = new AtomicInteger();
+        PilosaClient client = new PilosaClient(URI.defaultURI(), ClientOptions.builder().build()) {
+            @Override
+            List<String> importHosts(String indexName, long shard) {
+                lookups.put(shard, Thread.currentThread());
+                lookupCount.incrementAndGet();
+                return Collections.singletonList("node" + (shard % 2));
+            }
+        };
+        ImportTasks tasks = client.importEngine().tasks();
+        ShardRouter router = new ShardRouter(client, field, tasks, 2);
+        router.workerIndex(0);
+        tasks.awaitCompletion();
+        // the nodes of the following shards are fetched in the background
+        assertEquals(ShardRouter.PREFETCH_SHARDS + 1, lookups.size());
+        for (long shard = 1; shard <= ShardRouter.PREFETCH_SHARDS; shard++) {
+            router.workerIndex(shard);
+            assertNotSame(Thread.currentThread(), lookups.get(shard));
+        }
+        assertSame(Thread.currentThread(), lookups.get(0L));
+        // the prefetched shards are not fetched again
+        tasks.awaitCompletion();
+        assertEquals(2 * ShardRouter.PREFETCH_SHARDS + 1, lookupCount.get());
+        router.close();
+        client.close();
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import com.pilosa.client.exceptions.PilosaException;
+import com.pilosa.client.orm.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@Category(UnitTest.class)
+public class SpillImportTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void importColumnsTest() throws Exception {
+        Field field = Schema.defaultSchema().index("i").field("f");
+        final long shardWidth = ClientOptions.DEFAULT_SHARD_WIDTH;
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            // the shards are interleaved
+            records.add(Column.create(i % 7, (i % 3) * shardWidth + i, i));
+        }
+        ImportOptions options = ImportOptions.builder()
+                .setSpillDirectory(folder.getRoot().getPath())
+                .setMemoryBudget(800)
+                .setThreadCount(2)
+                .build();
+        Map<Long, List<Internal.ImportRequest>> requests = importRecords(field, records, options);
+
+        assertEquals(3, requests.size());
+        for (long shard = 0; shard < 3; shard++) {
+            // the shards are read back in slices which fit the memory budget
+            assertTrue(requests.get(shard).size() > 1);
+            Set<Long> columns = new HashSet<>();
+            for (Internal.ImportRequest request : requests.get(shard)) {
+                for (int i = 0; i < request.getColumnIDsCount(); i++) {
+                    long column = request.getColumnIDs(i);
+                    assertEquals(shard, column / shardWidth);
+                    long index = column % shardWidth;
+                    assertEquals(index % 7, request.getRowIDs(i));
+                    assertEquals(index, request.getTimestamps(i));
+                    columns.add(column);
+                }
+            }
+            assertEquals(100, columns.size());
+        }
+        // the spill files are removed
+        assertEquals(0, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void importFieldValuesTest() throws Exception {
+        Field field = Schema.defaultSchema().index("i").field("f", FieldOptions.builder().fieldInt(0, 1000).build());
+        final long shardWidth = ClientOptions.DEFAULT_SHARD_WIDTH;
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            records.add(FieldValue.create((i % 2) * shardWidth + i, i));
+        }
+        ImportOptions options = ImportOptions.builder()
+                .setSpillDirectory(folder.getRoot().getPath())
+                .setMemoryBudget(160)
+                .build();
+        final List<Internal.ImportValueRequest> requests = Collections.synchronizedList(new ArrayList<Internal.ImportValueRequest>());
+        PilosaClient client = new PilosaClient(URI.defaultURI(), ClientOptions.builder().build()) {
+            @Override
+            List<String> importHosts(ShardRecords records) {
+                return Collections.singletonList("node0");
+            }
+
+            @Override
+            void importNode(String hostUri, ImportRequest request) {
+                try {
+                    requests.add(Internal.ImportValueRequest.parseFrom(request.getPayload()));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        client.importField(field, iterator(records), options);
+        int count = 0;
+        for (Internal.ImportValueRequest request : requests) {
+            count += request.getColumnIDsCount();
+            for (int i = 0; i < request.getColumnIDsCount(); i++) {
+                assertEquals(request.getColumnIDs(i) % shardWidth, request.getValues(i));
+            }
+        }
+        assertEquals(100, count);
+    }
+
+    @Test
+    public void importInBatchesTest() throws Exception {
+        Field field = Schema.defaultSchema().index("i").field("f");
+        final long shardWidth = ClientOptions.DEFAULT_SHARD_WIDTH;
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            // the row IDs grow with the records, so the order of the requests can be checked
+            records.add(Column.create(i, (i % 2) * shardWidth + i));
+        }
+        ImportOptions options = ImportOptions.builder()
+                .setSpillDirectory(folder.getRoot().getPath())
+                .setMemoryBudget(2400)
+                .setBatchSize(30)
+                .build();
+        Map<Long, List<Internal.ImportRequest>> requests = importRecords(field, records, options);
+        assertEquals(2, requests.size());
+        for (List<Internal.ImportRequest> shardRequests : requests.values()) {
+            // 100 records of each shard in batches of 30
+            assertEquals(4, shardRequests.size());
+            long lastRow = -1;
+            for (Internal.ImportRequest request : shardRequests) {
+                assertTrue(request.getRowIDsCount() <= 30);
+                long minRow = Long.MAX_VALUE;
+                long maxRow = -1;
+                for (long row : request.getRowIDsList()) {
+                    minRow = Math.min(minRow, row);
+                    maxRow = Math.max(maxRow, row);
+                }
+                assertTrue(minRow > lastRow);
+                lastRow = maxRow;
+            }
+        }
+    }
+
+    @Test(expected = PilosaException.class)
+    public void keysNotSupportedTest() throws Exception {
+        Index index = Schema.defaultSchema().index("i", IndexOptions.builder().setKeys(true).build());
+        ImportOptions options = ImportOptions.builder()
+                .setSpillDirectory(folder.getRoot().getPath())
+                .build();
+        List<Record> records = new ArrayList<>();
+        records.add(Column.create(1, "a"));
+        importRecords(index.field("f"), records, options);
+    }
+
+    private static Map<Long, List<Internal.ImportRequest>> importRecords(Field field, List<Record> records,
+                                                                         ImportOptions options) {
+        final Map<Long, List<Internal.ImportRequest>> requests = new HashMap<>();
+        PilosaClient client = new PilosaClient(URI.defaultURI(), ClientOptions.builder().build()) {
+            @Override
+            List<String> importHosts(ShardRecords records) {
+                return Collections.singletonList("node0");
+            }
+
+            @Override
+            void importNode(String hostUri, ImportRequest request) {
+                try {
+                    Internal.ImportRequest r = Internal.ImportRequest.parseFrom(request.getPayload());
+                    synchronized (requests) {
+                        List<Internal.ImportRequest> shardRequests = requests.get(r.getShard());
+                        if (shardRequests == null) {
+                            shardRequests = new ArrayList<>();
+                            requests.put(r.getShard(), shardRequests);
+                        }
+                        shardRequests.add(r);
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        client.importField(field, iterator(records), options);
+        return requests;
+    }
+
+    private static RecordIterator iterator(List<Record> records) {
+        final Iterator<Record> it = records.iterator();
+        return new RecordIterator() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public Record next() {
+                return it.next();
+            }
+
+            @Override
+            public void remove() {
+            }
+        };
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import com.pilosa.client.orm.Field;
+import com.pilosa.client.orm.FieldOptions;
+import com.pilosa.client.orm.Index;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures the cost of computing the time views of records while encoding roaring imports of a YMDH time field.
+ * <p>
+ * Run with: mvn test -P benchmark
+ */
+@Category(Benchmark.class)
+public class TimeViewsBenchmark {
+    @Test
+    public void timeViewsBenchmark() {
+        for (int i = 0; i < 3; i++) {
+            // the first rounds warm up
+            double before = formattedViews();
+            double after = computedViews();
+            System.out.printf("YMDH views: date format: %.1f ns/record, computed: %.1f ns/record%n", before, after);
+        }
+        Field field = Index.create("i").field("f",
+                FieldOptions.builder().fieldTime(TimeQuantum.YEAR_MONTH_DAY_HOUR).build());
+        ImportOptions options = ImportOptions.builder().setRoaring(true).build();
+        ShardColumns columns = ShardColumns.create(field, 0, ClientOptions.DEFAULT_SHARD_WIDTH, options);
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            columns.add(i % 10, i % ClientOptions.DEFAULT_SHARD_WIDTH, TIMESTAMPS[i % TIMESTAMPS.length]);
+        }
+        for (int i = 0; i < 3; i++) {
+            long tic = System.nanoTime();
+            columns.toImportRequest();
+            System.out.printf("YMDH roaring import request: %.1f ns/record%n",
+                    (double) (System.nanoTime() - tic) / RECORD_COUNT);
+        }
+    }
+
+    /**
+     * Computes the view names the way they were computed before {@link TimeViews}.
+     */
+    private static double formattedViews() {
+        SimpleDateFormat[] formats = {
+                new SimpleDateFormat("yyyy"),
+                new SimpleDateFormat("yyyyMM"),
+                new SimpleDateFormat("yyyyMMdd"),
+                new SimpleDateFormat("yyyyMMddHH")
+        };
+        for (SimpleDateFormat format : formats) {
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        }
+        long total = 0;
+        long tic = System.nanoTime();
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            long timestamp = TIMESTAMPS[i % TIMESTAMPS.length];
+            String[] names = new String[formats.length];
+            for (int f = 0; f < formats.length; f++) {
+                names[f] = formats[f].format(new Date(timestamp / 1000000));
+            }
+            total += names.length;
+        }
+        long elapsed = System.nanoTime() - tic;
+        assertEquals(4L * RECORD_COUNT, total);
+        return (double) elapsed / RECORD_COUNT;
+    }
+
+    private static double computedViews() {
+        TimeViews timeViews = new TimeViews(TimeQuantum.YEAR_MONTH_DAY_HOUR);
+        long total = 0;
+        long tic = System.nanoTime();
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            total += timeViews.get(TIMESTAMPS[i % TIMESTAMPS.length]).length;
+        }
+        long elapsed = System.nanoTime() - tic;
+        assertEquals(4L * RECORD_COUNT, total);
+        return (double) elapsed / RECORD_COUNT;
+    }
+
+    private static final int RECORD_COUNT = 1000000;
+    private static final long[] TIMESTAMPS = new long[RECORD_COUNT];
+
+    static {
+        // events a second apart, spanning about 11 days
+        long start = 1542199376000000000L;
+        for (int i = 0; i < TIMESTAMPS.length; i++) {
+            TIMESTAMPS[i] = start + i * 1000000000L;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+@Category(UnitTest.class)
+public class TimeViewsTest {
+    @Test
+    public void getTest() {
+        TimeViews timeViews = new TimeViews(TimeQuantum.YEAR_MONTH_DAY_HOUR);
+        // 2018-11-14T12:42:56Z
+        assertArrayEquals(new String[]{"2018", "201811", "20181114", "2018111412"},
+                timeViews.get(1542199376000000000L));
+        TimeViews monthDay = new TimeViews(TimeQuantum.MONTH_DAY);
+        assertArrayEquals(new String[]{"197001", "19700101"}, monthDay.get(0));
+        assertArrayEquals(new String[]{"196912", "19691231"}, monthDay.get(-1));
+    }
+
+    @Test
+    public void cacheTest() {
+        TimeViews timeViews = new TimeViews(TimeQuantum.YEAR_MONTH_DAY_HOUR);
+        long hour = 3600L * 1000000000L;
+        String[] names = timeViews.get(1542199376000000000L);
+        assertSame(names, timeViews.get(1542199376000000000L + 60L * 1000000000L));
+        String[] nextHour = timeViews.get(1542199376000000000L + hour);
+        assertNotSame(names, nextHour);
+        assertSame(names[2], nextHour[2]);
+        assertEquals("2018111413", nextHour[3]);
+    }
+
+    @Test
+    public void matchesDateFormatTest() {
+        SimpleDateFormat fmt = new SimpleDateFormat("yyyyMMddHH");
+        fmt.setTimeZone(TimeZone.getTimeZone("UTC"));
+        TimeViews timeViews = new TimeViews(TimeQuantum.YEAR_MONTH_DAY_HOUR);
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            // 1900 to 2100
+            long millis = (long) ((random.nextDouble() * 200 - 70) * 365.25 * 24 * 3600 * 1000);
+            String expected = fmt.format(new Date(millis));
+            String[] names = timeViews.get(millis * 1000000L);
+            assertEquals(expected.substring(0, 4), names[0]);
+            assertEquals(expected.substring(0, 6), names[1]);
+            assertEquals(expected.substring(0, 8), names[2]);
+            assertEquals(expected, names[3]);
+        }
+    }
+}
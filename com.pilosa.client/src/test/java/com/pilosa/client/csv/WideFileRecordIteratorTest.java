@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017 Pilosa Corp.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ * contributors may be used to endorse or promote products derived
+ * from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES,
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING,
+ * BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package com.pilosa.client.csv;
+
+import com.pilosa.client.UnitTest;
+import com.pilosa.client.WideRecord;
+import com.pilosa.client.exceptions.PilosaException;
+import com.pilosa.client.orm.*;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@Category(UnitTest.class)
+public class WideFileRecordIteratorTest {
+    @Test
+    public void readTest() {
+        Index index = Schema.defaultSchema().index("i");
+        List<Field> fields = Arrays.asList(
+                index.field("color"),
+                index.field("category", FieldOptions.builder().setKeys(true).build()),
+                index.field("active", FieldOptions.builder().fieldBool().build()),
+                index.field("size", FieldOptions.builder().fieldInt(-100, 100).build())
+        );
+        String data = "1,10,books,1,-5\n" +
+                "2,,,0,\n" +
+                "3,12,toys,true,7,1540000000\n";
+        WideFileRecordIterator iterator = WideFileRecordIterator.fromStream(stream(data), fields);
+        iterator.setTimestampFormat(null);
+
+        assertTrue(iterator.hasNext());
+        WideRecord record = iterator.next();
+        assertEquals(1, record.getColumnID());
+        assertEquals(10, record.getRowID(0));
+        assertEquals("books", record.getRowKey(1));
+        assertEquals(1, record.getRowID(2));
+        assertEquals(-5, record.getValue(3));
+
+        record = iterator.next();
+        assertEquals(2, record.getColumnID());
+        assertFalse(record.hasValue(0));
+        assertFalse(record.hasValue(1));
+        assertTrue(record.hasValue(2));
+        assertEquals(0, record.getRowID(2));
+        assertFalse(record.hasValue(3));
+
+        record = iterator.next();
+        assertEquals(WideRecord.create(3, 4)
+                .setRowID(0, 12)
+                .setRowKey(1, "toys")
+                .setRowBool(2, true)
+                .setValue(3, 7)
+                .setTimestamp(1540000000), record);
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void readTSVWithColumnKeysTest() {
+        Index index = Schema.defaultSchema().index("i", IndexOptions.builder().setKeys(true).build());
+        List<Field> fields = Arrays.asList(index.field("f1"), index.field("f2"));
+        WideFileRecordIterator iterator = WideFileRecordIterator.fromStream(stream("user1\t5\t6\n"), fields, '\t');
+        WideRecord record = iterator.next();
+        assertEquals("user1", record.getColumnKey());
+        assertEquals(5, record.getRowID(0));
+        assertEquals(6, record.getRowID(1));
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test(expected = PilosaException.class)
+    public void missingCellsTest() {
+        Index index = Schema.defaultSchema().index("i");
+        List<Field> fields = Arrays.asList(index.field("f1"), index.field("f2"));
+        WideFileRecordIterator.fromStream(stream("1,2\n"), fields).next();
+    }
+
+    private static ByteArrayInputStream stream(String data) {
+        return new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8));
+    }
+}
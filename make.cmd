@@ -12,6 +12,10 @@ if errorlevel 1 (
 
 goto :end
 
+:bench
+    mvn -f com.pilosa.client/pom.xml test -P benchmark
+    goto :end
+
 :build
     mvn -f com.pilosa.client/pom.xml clean package
     goto :end